@@ -1,10 +1,16 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.CacheWarmer;
+import com.hmdp.utils.ISessionStore;
 import com.hmdp.utils.LoginInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillAdmissionInterceptor;
+import com.hmdp.utils.SeckillWindowCache;
+import com.hmdp.utils.SoldOutRegistry;
+import com.hmdp.utils.WarmupInterceptor;
 import jakarta.annotation.Resource;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -12,12 +18,29 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class MvcConfig implements WebMvcConfigurer {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private ISessionStore sessionStore;
+
+    @Resource
+    private CacheWarmer cacheWarmer;
+
+    @Resource
+    private SeckillAdmission seckillAdmission;
+
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private SeckillWindowCache seckillWindowCache;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-        // 1. 刷新 token 的拦截器要放在最前面
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate))
+        // 0. 缓存预热完成之前返回 503（Tomcat 在 ApplicationRunner 执行完之前就已经开始接收请求）
+        registry.addInterceptor(new WarmupInterceptor(cacheWarmer))
+                .addPathPatterns("/**")
+                .order(-1);
+
+        // 1. 刷新 token 的拦截器放在预热检查之后的最前面
+        registry.addInterceptor(new RefreshTokenInterceptor(sessionStore))
                 .addPathPatterns("/**")
                 .order(0);
 
@@ -29,9 +52,16 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/shop-type/**",
                         "/upload/**",
                         "/blog/hot",
+                        "/blog/likes/**",
                         "/user/code",
-                        "/user/login"
+                        "/user/login",
+                        "/user/loadtest/**"
                 )
                 .order(1);
+
+        // 3. 秒杀准入控制，需要登录用户
+        registry.addInterceptor(new SeckillAdmissionInterceptor(seckillAdmission, soldOutRegistry, seckillWindowCache))
+                .addPathPatterns("/voucher-order/seckill/*")
+                .order(2);
     }
 }
@@ -1,15 +1,16 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.UvCounter;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.annotation.Resource;
+import java.time.LocalDate;
 
 /**
  * <p>
@@ -26,6 +27,12 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private UvCounter uvCounter;
+
     /**
      * 根据id查询商铺信息
      * @param id 商铺id
@@ -34,9 +41,41 @@ public class ShopController {
     @GetMapping("/{id}")
     public Result queryShopById(@PathVariable("id") Long id) {
 //        return Result.ok(shopService.getById(id));
+        uvCounter.record(UvCounter.TYPE_SHOP, id);
         return shopService.getShopById(id);
     }
 
+    /**
+     * 查询商铺在日期范围内的独立访客数
+     * @param id 商铺id
+     * @param from 开始日期，默认今天
+     * @param to 结束日期，默认今天
+     * @return UV
+     */
+    @GetMapping("/{id}/uv")
+    public Result queryShopUv(
+            @PathVariable("id") Long id,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to
+    ) {
+        LocalDate today = LocalDate.now();
+        LocalDate begin = from == null ? today : from;
+        LocalDate end = to == null ? today : to;
+        if (begin.isAfter(end)) {
+            return Result.fail("开始日期不能晚于结束日期");
+        }
+        return Result.ok(uvCounter.count(UvCounter.TYPE_SHOP, id, begin, end));
+    }
+
+    /**
+     * 查询商铺缓存各级命中情况
+     * @return 本地缓存与Redis的命中/未命中次数
+     */
+    @GetMapping("/cache/stats")
+    public Result queryCacheStats() {
+        return Result.ok(cacheClient.stats());
+    }
+
     /**
      * 新增商铺信息
      * @param shop 商铺数据
@@ -44,10 +83,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库，并加入布隆过滤器
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -64,38 +101,36 @@ public class ShopController {
     /**
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
-     * @param current 页码
+     * @param current 页码，只在按距离排序时使用
+     * @param lastId 上一页最后一个商铺的id，首页不传
+     * @param x 经度，传入坐标时按距离排序
+     * @param y 纬度
      * @return 商铺列表
      */
     @GetMapping("/of/type")
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "lastId", required = false) Long lastId,
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .eq("type_id", typeId)
-                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByType(typeId, current, lastId, x, y);
     }
 
     /**
      * 根据商铺名称关键字分页查询商铺信息
      * @param name 商铺名称关键字
-     * @param current 页码
+     * @param lastId 上一页最后一个商铺的id，首页不传
+     * @param offset 上一页返回的offset，首页不传
      * @return 商铺列表
      */
     @GetMapping("/of/name")
     public Result queryShopByName(
             @RequestParam(value = "name", required = false) String name,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "lastId", required = false) Long lastId,
+            @RequestParam(value = "offset", required = false) Integer offset
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByName(name, lastId, offset);
     }
 }
@@ -6,15 +6,26 @@ import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.entity.UserInfo;
+import com.hmdp.service.ISignMonthService;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.UserHolder;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.annotation.Resource;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * <p>
@@ -35,6 +46,15 @@ public class UserController {
     @Resource
     private IUserInfoService userInfoService;
 
+    @Resource
+    private ISignMonthService signMonthService;
+
+    /**
+     * 是否开放压测接口
+     */
+    @Value("${hmdp.loadtest.enabled:false}")
+    private boolean loadTestEnabled;
+
     /**
      * 发送手机验证码
      */
@@ -71,6 +91,26 @@ public class UserController {
         return Result.ok(user);
     }
 
+    /**
+     * 批量创建登录会话（压测用），以纯文本流的形式每行返回一个token
+     * @param count 会话数量
+     * @param createMissing 已有用户不足时是否批量创建新用户
+     */
+    @PostMapping("/loadtest/sessions")
+    public ResponseEntity<StreamingResponseBody> provisionSessions(
+            @RequestParam(value = "count", defaultValue = "1000") Integer count,
+            @RequestParam(value = "createMissing", defaultValue = "true") Boolean createMissing) {
+        if (!loadTestEnabled) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            int provisioned = userService.provisionSessions(count, createMissing, writer);
+            log.info("压测会话创建完成, count={}", provisioned);
+        };
+        return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN).body(body);
+    }
+
     @GetMapping("/info/{id}")
     public Result info(@PathVariable("id") Long userId){
         // 查询详情
@@ -84,4 +124,14 @@ public class UserController {
         // 返回
         return Result.ok(info);
     }
+
+    @PostMapping("/sign")
+    public Result sign() {
+        return signMonthService.sign();
+    }
+
+    @GetMapping("/sign/count")
+    public Result signCount() {
+        return signMonthService.signCount();
+    }
 }
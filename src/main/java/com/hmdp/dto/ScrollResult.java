@@ -9,4 +9,12 @@ public class ScrollResult {
     private List<?> list;
     private Long minTime;
     private Integer offset;
+    /**
+     * 键集分页游标：本页最后一条记录的id，下一页从它之后开始
+     */
+    private Long lastId;
+    /**
+     * 热门博客游标：本页最后一条记录的点赞数，与 lastId 一起处理点赞数相同的情况
+     */
+    private Integer lastLiked;
 }
@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
 
 /**
  * <p>
@@ -13,4 +16,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    /**
+     * 批量累加点赞数，一条 UPDATE ... CASE id WHEN ... 完成整批回写，结果小于0时取0
+     * @param deltas 博客id -> 点赞数增量
+     * @return 更新行数
+     */
+    int incrLikedBatch(@Param("deltas") Map<Long, Integer> deltas);
 }
@@ -0,0 +1,22 @@
+package com.hmdp.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.entity.SignMonth;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * <p>
+ *  Mapper 接口
+ * </p>
+ */
+public interface SignMonthMapper extends BaseMapper<SignMonth> {
+
+    /**
+     * 多行写入归档，已存在的 (user_id, month) 与新位图按位或合并，重复归档不会丢数据
+     * @param signs 归档记录
+     * @return 影响行数
+     */
+    int upsertBatch(@Param("signs") List<SignMonth> signs);
+}
@@ -1,5 +1,6 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -13,4 +14,65 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IBlogService extends IService<Blog> {
 
+    /**
+     * 查询博客详情，包含作者信息和当前用户是否点赞
+     * @param id 博客id
+     * @return 博客
+     */
+    Result queryBlogById(Long id);
+
+    /**
+     * 滚动查询当前用户的博客，按id倒序
+     * @param lastId 上一页最后一篇博客的id，首页为空
+     * @return ScrollResult
+     */
+    Result queryMyBlog(Long lastId);
+
+    /**
+     * 保存博客，并加入热榜
+     * @param blog 博客
+     * @return 博客id
+     */
+    Result saveBlog(Blog blog);
+
+    /**
+     * 滚动查询热门博客，优先读取热榜，热榜未建立时按点赞数倒序查询数据库
+     * @param offset 热榜中已返回的条数
+     * @param lastLiked 上一页最后一篇博客的点赞数，查询数据库时使用
+     * @param lastId 上一页最后一篇博客的id，查询数据库时使用
+     * @return ScrollResult
+     */
+    Result queryHotBlog(Integer offset, Integer lastLiked, Long lastId);
+
+    /**
+     * 滚动查询关注的人发布的博客
+     * @param max 上一页的 minTime，首页传当前时间戳
+     * @param offset 上一页的 offset，即需要跳过的与 max 分数相同的条数
+     * @return ScrollResult
+     */
+    Result queryBlogOfFollow(Long max, Integer offset);
+
+    /**
+     * 从tb_blog全量校准热榜
+     */
+    void rebuildHotRank();
+
+    /**
+     * 当前用户点赞或取消点赞
+     * @param id 博客id
+     * @return 操作后是否为已点赞
+     */
+    Result likeBlog(Long id);
+
+    /**
+     * 查询最早点赞的前N个用户
+     * @param id 博客id
+     * @return UserDTO列表，按点赞时间排序
+     */
+    Result queryBlogLikes(Long id);
+
+    /**
+     * 把Redis中累积的点赞数增量批量回写到tb_blog
+     */
+    void flushLikes();
 }
@@ -1,8 +1,12 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.Follow;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+import java.util.function.Consumer;
+
 /**
  * <p>
  *  服务类
@@ -13,4 +17,46 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IFollowService extends IService<Follow> {
 
+    /**
+     * 关注或取关
+     * @param followUserId 被关注的用户id
+     * @param isFollow true关注，false取关
+     * @return 无
+     */
+    Result follow(Long followUserId, Boolean isFollow);
+
+    /**
+     * 当前用户是否关注了该用户
+     * @param followUserId 被关注的用户id
+     * @return true/false
+     */
+    Result isFollow(Long followUserId);
+
+    /**
+     * 当前用户与该用户的共同关注
+     * @param id 目标用户id
+     * @return UserDTO列表
+     */
+    Result followCommons(Long id);
+
+    /**
+     * 确保用户的关注集合 follows:{userId} 已加载到Redis
+     * @param userId 用户id
+     */
+    void loadFollowsCache(Long userId);
+
+    /**
+     * 粉丝数量
+     * @param userId 用户id
+     * @return 粉丝数
+     */
+    long countFollowers(Long userId);
+
+    /**
+     * 按id分页遍历粉丝，每页回调一次
+     * @param userId 用户id
+     * @param batchSize 每页数量
+     * @param consumer 处理一页粉丝id
+     */
+    void forEachFollowerBatch(Long userId, int batchSize, Consumer<List<Long>> consumer);
 }
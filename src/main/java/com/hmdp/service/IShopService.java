@@ -22,4 +22,36 @@ public interface IShopService extends IService<Shop> {
      * @return
      */
     Result updateShop(Shop shop);
+
+    /**
+     * 新增店铺，同时加入布隆过滤器
+     * @param shop
+     * @return 店铺id
+     */
+    Result saveShop(Shop shop);
+
+    /**
+     * 根据类型滚动查询店铺，传入坐标时按距离排序
+     * @param typeId 店铺类型
+     * @param current 页码，只在按距离排序时使用
+     * @param lastId 上一页最后一个店铺的id，首页为空
+     * @param x 经度，可为空
+     * @param y 纬度，可为空
+     * @return ScrollResult
+     */
+    Result queryShopByType(Integer typeId, Integer current, Long lastId, Double x, Double y);
+
+    /**
+     * 根据名称关键字滚动查询店铺，优先使用进程内的名称索引
+     * @param name 名称关键字，可为空
+     * @param lastId 上一页最后一个店铺的id，首页为空
+     * @param offset 已返回的条数，首页为空
+     * @return ScrollResult
+     */
+    Result queryShopByName(String name, Long lastId, Integer offset);
+
+    /**
+     * 从tb_shop全量重建店铺布隆过滤器
+     */
+    void rebuildBloomFilter();
 }
@@ -0,0 +1,30 @@
+package com.hmdp.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.SignMonth;
+
+/**
+ * <p>
+ *  服务类
+ * </p>
+ */
+public interface ISignMonthService extends IService<SignMonth> {
+
+    /**
+     * 当前用户今天签到
+     * @return 无
+     */
+    Result sign();
+
+    /**
+     * 当前用户截止今天的连续签到天数，今天还没签到时从昨天算起
+     * @return 连续签到天数
+     */
+    Result signCount();
+
+    /**
+     * 把之前月份的签到位图从Redis批量归档到tb_sign_month，并删除Redis中的key
+     */
+    void archive();
+}
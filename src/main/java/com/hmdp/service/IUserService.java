@@ -7,6 +7,9 @@ import com.hmdp.entity.User;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * <p>
  *  服务类
@@ -39,4 +42,13 @@ public interface IUserService extends IService<User> {
      */
     Result loginOut(HttpServletRequest request);
 
+    /**
+     * 批量创建登录会话（压测用），每行输出一个token
+     * @param count 会话数量
+     * @param createMissing 已有用户不足时是否批量创建新用户
+     * @param writer token输出
+     * @return 实际创建的会话数量
+     */
+    int provisionSessions(int count, boolean createMissing, Writer writer) throws IOException;
+
 }
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,4 +18,10 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
       Result seckillVoucher(Long voucherId);
       void createVoucherOrder(VoucherOrder voucherOrder);
+
+      /**
+       * 批量创建订单：多行插入订单 + 按券聚合扣减库存，在同一个事务中完成
+       * @param voucherOrders 一批订单
+       */
+      void createVoucherOrderBatch(List<VoucherOrder> voucherOrders);
 }
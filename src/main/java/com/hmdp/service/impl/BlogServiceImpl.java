@@ -1,11 +1,62 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
+import com.hmdp.service.IFollowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserProfileLoader;
+import com.hmdp.utils.UserHolder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.BLOG_LIKERS_TOP;
+import static com.hmdp.utils.SystemConstants.FEED_PUSH_BATCH_SIZE;
+import static com.hmdp.utils.SystemConstants.HOT_RANK_LOAD_PAGE_SIZE;
+import static com.hmdp.utils.SystemConstants.KNOWN_BLOG_CACHE_SIZE;
+import static com.hmdp.utils.SystemConstants.LIKE_FLUSH_BATCH_SIZE;
+
 /**
  * <p>
  *  服务实现类
@@ -14,7 +65,550 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    /**
+     * 热度时间项的起点 2022-01-01
+     */
+    private static final long HOT_BEGIN_TIMESTAMP = 1640995200L;
+
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+    private static final DefaultRedisScript<List<Object>> LIKE_TAKE_SCRIPT;
+
+    static {
+        @SuppressWarnings("unchecked")
+        Class<List<Object>> listType = (Class<List<Object>>) (Class<?>) List.class;
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("lua/blog-like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+        LIKE_TAKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_TAKE_SCRIPT.setLocation(new ClassPathResource("lua/blog-like-take.lua"));
+        LIKE_TAKE_SCRIPT.setResultType(listType);
+    }
+
+    @Resource
+    private UserProfileLoader userProfileLoader;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Value("${hmdp.blog.like-flush-interval:5s}")
+    private Duration likeFlushInterval;
+
+    @Value("${hmdp.blog.hot.capacity:1000}")
+    private int hotCapacity;
+
+    @Value("${hmdp.blog.hot.window:30d}")
+    private Duration hotWindow;
+
+    @Value("${hmdp.blog.hot.decay:12h}")
+    private Duration hotDecay;
+
+    @Value("${hmdp.blog.hot.reconcile-interval:10m}")
+    private Duration hotReconcileInterval;
+
+    @Value("${hmdp.feed.push-threshold:5000}")
+    private long feedPushThreshold;
+
+    @Value("${hmdp.feed.inbox-capacity:1000}")
+    private long feedInboxCapacity;
+
+    @Value("${hmdp.feed.outbox-capacity:1000}")
+    private long feedOutboxCapacity;
+
+    @Resource
+    private IFollowService followService;
+
+    /**
+     * 已确认存在的笔记id，点赞前先查这里，避免每次点赞都查库
+     */
+    private final LRUCache<Long, Boolean> knownBlogs = CacheUtil.newLRUCache(KNOWN_BLOG_CACHE_SIZE);
+
+    private final ScheduledExecutorService blogExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * 推送新博客到粉丝收件箱的线程池，队列满时由调用线程执行
+     */
+    private final ExecutorService feedPushExecutor = new ThreadPoolExecutor(
+            2, 2, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1000),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    @PostConstruct
+    private void init() {
+        blogExecutor.scheduleWithFixedDelay(this::flushLikes,
+                likeFlushInterval.toMillis(), likeFlushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        // 启动时校准一次热榜，之后定时校准，修正增量更新的误差并淘汰过期博客
+        blogExecutor.execute(this::rebuildHotRank);
+        blogExecutor.scheduleWithFixedDelay(this::rebuildHotRank,
+                hotReconcileInterval.toMillis(), hotReconcileInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        blogExecutor.shutdownNow();
+        feedPushExecutor.shutdown();
+        // 停机前把剩余的增量写回去
+        flushLikes();
+    }
+
+    @Override
+    public Result saveBlog(Blog blog) {
+        // 1.保存博客
+        save(blog);
+        String id = blog.getId().toString();
+        // 2.热榜已建立时直接加入，否则等下一次校准
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+            stringRedisTemplate.opsForZSet().add(BLOG_HOT_KEY, id, hotScore(0, LocalDateTime.now()));
+            stringRedisTemplate.opsForHash().put(BLOG_HOT_LIKED_KEY, id, "0");
+        }
+        // 3.写入作者的发件箱，只保留最新的 outbox-capacity 条
+        long now = System.currentTimeMillis();
+        String outboxKey = FEED_OUTBOX_KEY + blog.getUserId();
+        stringRedisTemplate.opsForZSet().add(outboxKey, id, now);
+        stringRedisTemplate.opsForZSet().removeRange(outboxKey, 0, -feedOutboxCapacity - 1);
+        // 4.异步推送到粉丝收件箱
+        Long authorId = blog.getUserId();
+        feedPushExecutor.execute(() -> pushToFollowers(authorId, id, now));
+        return Result.ok(blog.getId());
+    }
+
+    /**
+     * 推模式：按页读取粉丝，每页用一次pipeline写入 feed:{粉丝id} 并截断
+     * <p>
+     * 粉丝数超过 push-threshold 的作者只记入大V集合 feed:big，不推送，粉丝读取时从其发件箱拉取。
+     * </p>
+     */
+    private void pushToFollowers(Long authorId, String blogId, long timestamp) {
+        try {
+            long followers = followService.countFollowers(authorId);
+            if (followers > feedPushThreshold) {
+                stringRedisTemplate.opsForSet().add(FEED_BIG_AUTHORS_KEY, authorId.toString());
+                return;
+            }
+            stringRedisTemplate.opsForSet().remove(FEED_BIG_AUTHORS_KEY, authorId.toString());
+            followService.forEachFollowerBatch(authorId, FEED_PUSH_BATCH_SIZE, followerIds ->
+                    stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                        for (Long followerId : followerIds) {
+                            String key = FEED_KEY + followerId;
+                            stringConnection.zAdd(key, timestamp, blogId);
+                            stringConnection.zRemRange(key, 0, -feedInboxCapacity - 1);
+                        }
+                        return null;
+                    }));
+        } catch (Exception e) {
+            log.error("推送博客到粉丝收件箱失败, blogId={}", blogId, e);
+        }
+    }
+
+    @Override
+    public Result queryBlogOfFollow(Long max, Integer offset) {
+        // 1.获取当前用户
+        Long userId = UserHolder.getUser().getId();
+        int skip = offset == null ? 0 : offset;
+        int count = SystemConstants.MAX_PAGE_SIZE;
+        // 2.数据源：自己的收件箱 + 关注的大V的发件箱
+        List<String> keys = new ArrayList<>();
+        keys.add(FEED_KEY + userId);
+        followService.loadFollowsCache(userId);
+        Set<String> bigAuthors = stringRedisTemplate.opsForSet().intersect(FOLLOWS_KEY + userId, FEED_BIG_AUTHORS_KEY);
+        if (bigAuthors != null) {
+            bigAuthors.forEach(authorId -> keys.add(FEED_OUTBOX_KEY + authorId));
+        }
+        // 3.ZREVRANGEBYSCORE key max 0 WITHSCORES LIMIT 0 offset+count，每个数据源最多取这么多就够了
+        //   合并后按 分数倒序、博客id倒序 排列，与 ZREVRANGEBYSCORE 的顺序一致，同一博客只保留一次
+        Map<String, Double> merged = new HashMap<>();
+        for (String key : keys) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .reverseRangeByScoreWithScores(key, 0, max, 0, skip + count);
+            if (tuples != null) {
+                tuples.forEach(tuple -> merged.putIfAbsent(tuple.getValue(), tuple.getScore()));
+            }
+        }
+        ScrollResult r = new ScrollResult();
+        if (merged.isEmpty()) {
+            r.setList(Collections.emptyList());
+            return Result.ok(r);
+        }
+        List<Map.Entry<String, Double>> entries = new ArrayList<>(merged.entrySet());
+        entries.sort(Map.Entry.<String, Double>comparingByValue().reversed()
+                .thenComparing(Map.Entry.<String, Double>comparingByKey().reversed()));
+        // 4.跳过上一页已经返回的、分数等于 max 的 offset 条
+        int from = 0;
+        while (from < entries.size() && from < skip && entries.get(from).getValue().longValue() == max) {
+            from++;
+        }
+        List<Map.Entry<String, Double>> page = entries.subList(from, Math.min(from + count, entries.size()));
+        // 5.计算下一页的 minTime 和 offset：本页最小分数，以及本页中等于该分数的条数
+        List<String> ids = new ArrayList<>(page.size());
+        long minTime = 0;
+        int os = 1;
+        for (Map.Entry<String, Double> entry : page) {
+            ids.add(entry.getKey());
+            long time = entry.getValue().longValue();
+            if (time == minTime) {
+                os++;
+            } else {
+                minTime = time;
+                os = 1;
+            }
+        }
+        // 全部都等于 max 时要累加上一页的 offset
+        if (minTime == max) {
+            os += from;
+        }
+        // 6.查询博客，按收件箱顺序排列
+        Map<Long, Blog> blogMap = ids.isEmpty() ? Collections.emptyMap() : listByIds(ids).stream()
+                .collect(Collectors.toMap(Blog::getId, Function.identity()));
+        List<Blog> blogs = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Blog blog = blogMap.get(Long.valueOf(id));
+            if (blog != null) {
+                blogs.add(blog);
+            }
+        }
+        fillAuthors(blogs);
+        markLiked(blogs);
+        r.setList(blogs);
+        r.setMinTime(minTime);
+        r.setOffset(os);
+        return Result.ok(r);
+    }
+
+    /**
+     * 热度 = log10(max(点赞数, 1)) + 发布时间 / decay
+     * <p>
+     * 时间项只和发布时间有关，不随当前时间变化，所以不需要定时重算全部分数；
+     * 点赞数变化时只需调整 log10 部分（见 lua/blog-like.lua）。
+     * </p>
+     */
+    private double hotScore(int liked, LocalDateTime createTime) {
+        long seconds = createTime.atZone(ZoneId.systemDefault()).toEpochSecond() - HOT_BEGIN_TIMESTAMP;
+        return Math.log10(Math.max(liked, 1)) + (double) seconds / hotDecay.getSeconds();
+    }
+
+    /**
+     * 从tb_blog全量校准热榜：分页扫描时间窗口内的博客，点赞数加上尚未回写的增量，
+     * 用小顶堆保留热度最高的 capacity 篇，写入临时key后RENAME替换
+     */
+    @Override
+    public void rebuildHotRank() {
+        RLock lock = redissonClient.getLock(LOCK_BLOG_HOT_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            // 1.尚未回写的点赞数增量
+            Map<Long, Integer> pending = new HashMap<>();
+            for (String key : Arrays.asList(BLOG_LIKED_DELTA_KEY, BLOG_LIKED_FLUSHING_KEY)) {
+                stringRedisTemplate.opsForHash().entries(key).forEach((id, delta) ->
+                        pending.merge(Long.valueOf(id.toString()), Integer.valueOf(delta.toString()), Integer::sum));
+            }
+            // 2.分页扫描，小顶堆保留热度最高的 capacity 篇
+            LocalDateTime since = LocalDateTime.now().minus(hotWindow);
+            PriorityQueue<HotEntry> heap = new PriorityQueue<>(Comparator.comparingDouble(e -> e.score));
+            long lastId = 0;
+            while (true) {
+                List<Blog> page = lambdaQuery()
+                        .select(Blog::getId, Blog::getLiked, Blog::getCreateTime)
+                        .gt(Blog::getId, lastId)
+                        .ge(Blog::getCreateTime, since)
+                        .orderByAsc(Blog::getId)
+                        .last("LIMIT " + HOT_RANK_LOAD_PAGE_SIZE)
+                        .list();
+                for (Blog blog : page) {
+                    int liked = Math.max(blog.getLiked() + pending.getOrDefault(blog.getId(), 0), 0);
+                    heap.offer(new HotEntry(blog.getId(), liked, hotScore(liked, blog.getCreateTime())));
+                    if (heap.size() > hotCapacity) {
+                        heap.poll();
+                    }
+                }
+                if (page.size() < HOT_RANK_LOAD_PAGE_SIZE) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1).getId();
+            }
+            // 3.写入临时key后替换
+            String tmpHotKey = BLOG_HOT_KEY + ":tmp";
+            String tmpLikedKey = BLOG_HOT_LIKED_KEY + ":tmp";
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                stringConnection.del(tmpHotKey, tmpLikedKey);
+                if (heap.isEmpty()) {
+                    stringConnection.del(BLOG_HOT_KEY, BLOG_HOT_LIKED_KEY);
+                    return null;
+                }
+                for (HotEntry entry : heap) {
+                    String id = String.valueOf(entry.id);
+                    stringConnection.zAdd(tmpHotKey, entry.score, id);
+                    stringConnection.hSet(tmpLikedKey, id, String.valueOf(entry.liked));
+                }
+                stringConnection.rename(tmpHotKey, BLOG_HOT_KEY);
+                stringConnection.rename(tmpLikedKey, BLOG_HOT_LIKED_KEY);
+                return null;
+            });
+            log.info("热榜校准完成, size={}", heap.size());
+        } catch (Exception e) {
+            log.error("热榜校准失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class HotEntry {
+        private final long id;
+        private final int liked;
+        private final double score;
+
+        private HotEntry(long id, int liked, double score) {
+            this.id = id;
+            this.liked = liked;
+            this.score = score;
+        }
+    }
+
+    @Override
+    public Result queryBlogById(Long id) {
+        // 1.查询blog
+        Blog blog = getById(id);
+        if (blog == null) {
+            return Result.fail("笔记不存在！");
+        }
+        // 2.查询blog有关的用户和是否被点赞
+        List<Blog> blogs = Collections.singletonList(blog);
+        fillAuthors(blogs);
+        markLiked(blogs);
+        return Result.ok(blog);
+    }
+
+    @Override
+    public Result queryMyBlog(Long lastId) {
+        // 1.获取登录用户
+        UserDTO user = UserHolder.getUser();
+        // 2.WHERE user_id = ? AND id < lastId ORDER BY id DESC LIMIT n，走(user_id, id)索引，不查总数
+        List<Blog> blogs = lambdaQuery()
+                .eq(Blog::getUserId, user.getId())
+                .lt(lastId != null, Blog::getId, lastId)
+                .orderByDesc(Blog::getId)
+                .last("LIMIT " + SystemConstants.MAX_PAGE_SIZE)
+                .list();
+        markLiked(blogs);
+        // 3.封装游标
+        ScrollResult r = new ScrollResult();
+        r.setList(blogs);
+        if (!blogs.isEmpty()) {
+            r.setLastId(blogs.get(blogs.size() - 1).getId());
+        }
+        return Result.ok(r);
+    }
+
+    @Override
+    public Result queryHotBlog(Integer offset, Integer lastLiked, Long lastId) {
+        // 1.ZREVRANGE blog:hot offset offset+n-1
+        int start = offset == null ? 0 : offset;
+        Set<String> top = stringRedisTemplate.opsForZSet()
+                .reverseRange(BLOG_HOT_KEY, start, start + SystemConstants.MAX_PAGE_SIZE - 1);
+        if (top != null && (!top.isEmpty() || Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_KEY)))) {
+            return Result.ok(queryHotBlogFromRank(new ArrayList<>(top), start));
+        }
+        // 2.热榜还未建立，查数据库
+        return Result.ok(queryHotBlogFromDb(lastLiked, lastId));
+    }
+
+    private ScrollResult queryHotBlogFromRank(List<String> ids, int offset) {
+        ScrollResult r = new ScrollResult();
+        r.setOffset(offset + ids.size());
+        if (ids.isEmpty()) {
+            r.setList(Collections.emptyList());
+            return r;
+        }
+        // 1.一次IN查询博客，按热榜顺序排列
+        Map<Long, Blog> blogMap = listByIds(ids).stream()
+                .collect(Collectors.toMap(Blog::getId, Function.identity()));
+        // 2.点赞数以热榜中的为准，不必等待回写
+        List<Object> likedList = stringRedisTemplate.opsForHash().multiGet(BLOG_HOT_LIKED_KEY, new ArrayList<>(ids));
+        List<Blog> blogs = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Blog blog = blogMap.get(Long.valueOf(ids.get(i)));
+            if (blog == null) {
+                continue;
+            }
+            Object liked = likedList.get(i);
+            if (liked != null) {
+                blog.setLiked(Integer.valueOf(liked.toString()));
+            }
+            blogs.add(blog);
+        }
+        // 3.查询作者和点赞状态
+        fillAuthors(blogs);
+        markLiked(blogs);
+        r.setList(blogs);
+        return r;
+    }
+
+    private ScrollResult queryHotBlogFromDb(Integer lastLiked, Long lastId) {
+        // 1.按(liked, id)组合游标查询：liked < lastLiked OR (liked = lastLiked AND id < lastId)
+        //   点赞数相同的博客由id区分，翻页时既不会重复也不会遗漏
+        boolean hasCursor = lastLiked != null && lastId != null;
+        List<Blog> blogs = lambdaQuery()
+                .and(hasCursor, w -> w.lt(Blog::getLiked, lastLiked)
+                        .or(o -> o.eq(Blog::getLiked, lastLiked).lt(Blog::getId, lastId)))
+                .orderByDesc(Blog::getLiked)
+                .orderByDesc(Blog::getId)
+                .last("LIMIT " + SystemConstants.MAX_PAGE_SIZE)
+                .list();
+        // 2.查询作者和点赞状态
+        fillAuthors(blogs);
+        markLiked(blogs);
+        // 3.封装游标
+        ScrollResult r = new ScrollResult();
+        r.setList(blogs);
+        if (!blogs.isEmpty()) {
+            Blog last = blogs.get(blogs.size() - 1);
+            r.setLastLiked(last.getLiked());
+            r.setLastId(last.getId());
+        }
+        return r;
+    }
+
+    /**
+     * 批量填充这一页博客的作者昵称和头像
+     */
+    private void fillAuthors(List<Blog> blogs) {
+        userProfileLoader.fill(blogs, Blog::getUserId, (blog, user) -> {
+            blog.setName(user.getNickName());
+            blog.setIcon(user.getIcon());
+        });
+    }
+
+    /**
+     * 用一次pipeline查询当前用户是否点赞过这一页的博客，未登录时不处理
+     */
+    private void markLiked(List<Blog> blogs) {
+        UserDTO user = UserHolder.getUser();
+        if (user == null || blogs.isEmpty()) {
+            return;
+        }
+        String userId = user.getId().toString();
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                stringConnection.zScore(BLOG_LIKED_KEY + blog.getId(), userId);
+            }
+            return null;
+        });
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(scores.get(i) != null);
+        }
+    }
+
+    @Override
+    public Result likeBlog(Long id) {
+        // 1.笔记不存在直接拒绝，避免给不存在的id写入点赞集合和增量
+        if (!blogExists(id)) {
+            return Result.fail("笔记不存在！");
+        }
+        // 2.获取登录用户
+        Long userId = UserHolder.getUser().getId();
+        // 3.执行lua脚本：已点赞则取消，未点赞则点赞，并记录待回写的增量
+        Long liked = stringRedisTemplate.execute(
+                LIKE_SCRIPT,
+                Arrays.asList(BLOG_LIKED_KEY + id, BLOG_LIKED_DELTA_KEY, BLOG_HOT_KEY, BLOG_HOT_LIKED_KEY),
+                userId.toString(), String.valueOf(System.currentTimeMillis()), id.toString());
+        return Result.ok(liked != null && liked == 1L);
+    }
+
+    private boolean blogExists(Long id) {
+        if (id == null) {
+            return false;
+        }
+        if (knownBlogs.containsKey(id)) {
+            return true;
+        }
+        boolean exists = lambdaQuery().eq(Blog::getId, id).exists();
+        if (exists) {
+            knownBlogs.put(id, Boolean.TRUE);
+        }
+        return exists;
+    }
+
+    @Override
+    public Result queryBlogLikes(Long id) {
+        // 1.查询最早点赞的前N个用户 ZRANGE blog:liked:{id} 0 N-1
+        Set<String> top = stringRedisTemplate.opsForZSet().range(BLOG_LIKED_KEY + id, 0, BLOG_LIKERS_TOP - 1);
+        if (top == null || top.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 2.批量加载用户资料，按点赞顺序返回
+        List<Long> ids = top.stream().map(Long::valueOf).collect(Collectors.toList());
+        Map<Long, UserDTO> users = userProfileLoader.loadAll(ids);
+        List<UserDTO> userDTOS = new ArrayList<>(ids.size());
+        for (Long userId : ids) {
+            UserDTO user = users.get(userId);
+            if (user != null) {
+                userDTOS.add(user);
+            }
+        }
+        return Result.ok(userDTOS);
+    }
+
+    /**
+     * 批量回写点赞数
+     * <p>
+     * 多个实例同时运行时只由拿到锁的实例回写；增量先改名为回写中的哈希再读取，
+     * 数据库更新成功后才删除，失败时下一轮重试同一批，回写期间的新点赞进入新的增量哈希。
+     * </p>
+     */
+    @Override
+    public void flushLikes() {
+        RLock lock = redissonClient.getLock(LOCK_BLOG_LIKED_FLUSH_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            // 1.取出待回写的增量
+            List<Object> entries = stringRedisTemplate.execute(
+                    LIKE_TAKE_SCRIPT, Arrays.asList(BLOG_LIKED_DELTA_KEY, BLOG_LIKED_FLUSHING_KEY));
+            if (entries == null || entries.isEmpty()) {
+                return;
+            }
+            Map<Long, Integer> deltas = new LinkedHashMap<>();
+            for (int i = 0; i + 1 < entries.size(); i += 2) {
+                int delta = Integer.parseInt(String.valueOf(entries.get(i + 1)));
+                if (delta != 0) {
+                    deltas.put(Long.valueOf(String.valueOf(entries.get(i))), delta);
+                }
+            }
+            // 2.分批执行 UPDATE ... CASE id WHEN ...，每批成功后从回写中的哈希删掉，失败重试时不会重复累加
+            Map<Long, Integer> batch = new HashMap<>();
+            for (Map.Entry<Long, Integer> entry : deltas.entrySet()) {
+                batch.put(entry.getKey(), entry.getValue());
+                if (batch.size() == LIKE_FLUSH_BATCH_SIZE) {
+                    flushBatch(batch);
+                }
+            }
+            if (!batch.isEmpty()) {
+                flushBatch(batch);
+            }
+            // 3.全部成功后删除这一批增量
+            stringRedisTemplate.delete(BLOG_LIKED_FLUSHING_KEY);
+            log.debug("回写点赞数 {} 篇博客", deltas.size());
+        } catch (Exception e) {
+            log.error("回写点赞数失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushBatch(Map<Long, Integer> batch) {
+        baseMapper.incrLikedBatch(batch);
+        stringRedisTemplate.opsForHash().delete(BLOG_LIKED_FLUSHING_KEY,
+                batch.keySet().stream().map(String::valueOf).toArray());
+        batch.clear();
+    }
 }
@@ -1,11 +1,32 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Follow;
 import com.hmdp.mapper.FollowMapper;
 import com.hmdp.service.IFollowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UserProfileLoader;
+import jakarta.annotation.Resource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.FOLLOWS_KEY;
+import static com.hmdp.utils.RedisConstants.FOLLOWS_TTL;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +38,132 @@ import org.springframework.stereotype.Service;
 @Service
 public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> implements IFollowService {
 
+    private static final DefaultRedisScript<Long> SADD_IF_EXISTS_SCRIPT;
+
+    static {
+        SADD_IF_EXISTS_SCRIPT = new DefaultRedisScript<>();
+        SADD_IF_EXISTS_SCRIPT.setLocation(new ClassPathResource("lua/sadd-if-exists.lua"));
+        SADD_IF_EXISTS_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private UserProfileLoader userProfileLoader;
+
+    @Override
+    public Result follow(Long followUserId, Boolean isFollow) {
+        // 1.获取登录用户
+        Long userId = UserHolder.getUser().getId();
+        if (userId.equals(followUserId)) {
+            return Result.fail("不能关注自己！");
+        }
+        String key = FOLLOWS_KEY + userId;
+        // 2.判断到底是关注还是取关
+        if (Boolean.TRUE.equals(isFollow)) {
+            // 3.关注，新增数据，(user_id, follow_user_id) 唯一索引保证重复关注只有一条
+            Follow follow = new Follow();
+            follow.setUserId(userId);
+            follow.setFollowUserId(followUserId);
+            try {
+                save(follow);
+            } catch (DuplicateKeyException e) {
+                return Result.ok();
+            }
+            // 把关注用户的id放入redis的set集合，集合还没加载时等下次读取再整体加载（判断和写入在一个脚本里完成）
+            stringRedisTemplate.execute(SADD_IF_EXISTS_SCRIPT, Collections.singletonList(key), followUserId.toString());
+        } else {
+            // 4.取关，删除 delete from tb_follow where user_id = ? and follow_user_id = ?
+            boolean isSuccess = lambdaUpdate()
+                    .eq(Follow::getUserId, userId).eq(Follow::getFollowUserId, followUserId)
+                    .remove();
+            if (isSuccess) {
+                stringRedisTemplate.opsForSet().remove(key, followUserId.toString());
+            }
+        }
+        return Result.ok();
+    }
+
+    @Override
+    public Result isFollow(Long followUserId) {
+        Long userId = UserHolder.getUser().getId();
+        loadFollowsCache(userId);
+        Boolean isMember = stringRedisTemplate.opsForSet().isMember(FOLLOWS_KEY + userId, followUserId.toString());
+        return Result.ok(Boolean.TRUE.equals(isMember));
+    }
+
+    @Override
+    public Result followCommons(Long id) {
+        // 1.求交集 SINTER follows:{me} follows:{id}
+        Long userId = UserHolder.getUser().getId();
+        loadFollowsCache(userId);
+        loadFollowsCache(id);
+        Set<String> intersect = stringRedisTemplate.opsForSet().intersect(FOLLOWS_KEY + userId, FOLLOWS_KEY + id);
+        if (intersect == null || intersect.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 2.批量加载用户资料
+        List<Long> ids = intersect.stream().map(Long::valueOf).collect(Collectors.toList());
+        Map<Long, UserDTO> users = userProfileLoader.loadAll(ids);
+        List<UserDTO> userDTOS = new ArrayList<>(ids.size());
+        for (Long followId : ids) {
+            UserDTO user = users.get(followId);
+            if (user != null) {
+                userDTOS.add(user);
+            }
+        }
+        return Result.ok(userDTOS);
+    }
+
+    /**
+     * 关注集合不存在时从tb_follow加载，没有关注任何人时不建key，每次回查数据库（走 user_id 索引）
+     */
+    @Override
+    public void loadFollowsCache(Long userId) {
+        String key = FOLLOWS_KEY + userId;
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+            return;
+        }
+        String[] ids = lambdaQuery()
+                .select(Follow::getFollowUserId)
+                .eq(Follow::getUserId, userId)
+                .list()
+                .stream()
+                .map(follow -> follow.getFollowUserId().toString())
+                .toArray(String[]::new);
+        if (ids.length == 0) {
+            return;
+        }
+        stringRedisTemplate.opsForSet().add(key, ids);
+        stringRedisTemplate.expire(key, FOLLOWS_TTL, TimeUnit.DAYS);
+    }
+
+    @Override
+    public long countFollowers(Long userId) {
+        return lambdaQuery().eq(Follow::getFollowUserId, userId).count();
+    }
+
+    @Override
+    public void forEachFollowerBatch(Long userId, int batchSize, Consumer<List<Long>> consumer) {
+        long lastId = 0;
+        while (true) {
+            // WHERE follow_user_id = ? AND id > ? ORDER BY id LIMIT n，走(follow_user_id, id)索引
+            List<Follow> page = lambdaQuery()
+                    .select(Follow::getId, Follow::getUserId)
+                    .eq(Follow::getFollowUserId, userId)
+                    .gt(Follow::getId, lastId)
+                    .orderByAsc(Follow::getId)
+                    .last("LIMIT " + batchSize)
+                    .list();
+            if (page.isEmpty()) {
+                return;
+            }
+            consumer.accept(page.stream().map(Follow::getUserId).collect(Collectors.toList()));
+            if (page.size() < batchSize) {
+                return;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+    }
 }
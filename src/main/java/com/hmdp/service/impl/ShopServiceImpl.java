@@ -1,21 +1,49 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.NGramIndex;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.SystemConstants;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.domain.geo.GeoReference;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
-import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.BLOOM_LOAD_PAGE_SIZE;
 
 /**
  * <p>
@@ -25,12 +53,336 @@ import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${hmdp.bloom.shop.expected-insertions:100000}")
+    private long bloomExpectedInsertions;
+
+    @Value("${hmdp.bloom.shop.fpp:0.01}")
+    private double bloomFpp;
+
+    @Value("${hmdp.bloom.shop.sync-interval:1m}")
+    private Duration bloomSyncInterval;
+
+    @Value("${hmdp.bloom.shop.rebuild-interval:24h}")
+    private Duration bloomRebuildInterval;
+
+    @Value("${hmdp.search.shop.rebuild-interval:1h}")
+    private Duration nameIndexRebuildInterval;
+
+    /**
+     * 商铺id布隆过滤器，位数组存于Redis，本地保留镜像
+     */
+    private RedisBloomFilter shopBloomFilter;
+
+    /**
+     * 布隆过滤器是否已经加载完成，未完成时不做拦截
+     */
+    private volatile boolean bloomReady = false;
+
+    /**
+     * 商铺名称倒排索引，重建时整体替换
+     */
+    private volatile NGramIndex shopNameIndex = new NGramIndex();
+
+    /**
+     * 名称索引是否已经加载完成，未完成时回退到数据库查询
+     */
+    private volatile boolean nameIndexReady = false;
+
+    /**
+     * 保护名称索引的增量更新和重建时的替换
+     */
+    private final Object nameIndexLock = new Object();
+
+    /**
+     * 重建期间记录的增量更新，替换前回放到新索引里，避免扫描开始后的修改在替换时丢失；不在重建时为null
+     */
+    private Map<Long, String> nameIndexJournal;
+
+    private final ScheduledExecutorService indexExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    @PostConstruct
+    private void initIndexes() {
+        shopBloomFilter = new RedisBloomFilter(stringRedisTemplate, SHOP_BLOOM_KEY, bloomExpectedInsertions, bloomFpp);
+        // 其他节点新增商铺时同步到本地镜像
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> shopBloomFilter.addLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(SHOP_BLOOM_CHANNEL));
+        // 启动时从tb_shop全量构建，之后定时合并Redis中的位、定时重建
+        indexExecutor.execute(this::rebuildBloomFilter);
+        indexExecutor.scheduleWithFixedDelay(this::syncBloomFilter,
+                bloomSyncInterval.toMillis(), bloomSyncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        indexExecutor.scheduleWithFixedDelay(this::rebuildBloomFilter,
+                bloomRebuildInterval.toMillis(), bloomRebuildInterval.toMillis(), TimeUnit.MILLISECONDS);
+        // 名称索引：其他节点新增或修改商铺时增量更新，消息格式 id:name
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int colon = body.indexOf(':');
+            applyNameIndex(Long.parseLong(body.substring(0, colon)), body.substring(colon + 1));
+        }, new ChannelTopic(SHOP_INDEX_CHANNEL));
+        indexExecutor.execute(this::rebuildNameIndex);
+        indexExecutor.scheduleWithFixedDelay(this::rebuildNameIndex,
+                nameIndexRebuildInterval.toMillis(), nameIndexRebuildInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroyIndexes() {
+        indexExecutor.shutdownNow();
+    }
+
+    /**
+     * 分页扫描tb_shop的(id, name)重建名称索引
+     */
+    private void rebuildNameIndex() {
+        synchronized (nameIndexLock) {
+            nameIndexJournal = new HashMap<>();
+        }
+        try {
+            NGramIndex index = new NGramIndex();
+            long lastId = 0;
+            while (true) {
+                List<Shop> page = lambdaQuery()
+                        .select(Shop::getId, Shop::getName)
+                        .gt(Shop::getId, lastId)
+                        .orderByAsc(Shop::getId)
+                        .last("LIMIT " + BLOOM_LOAD_PAGE_SIZE)
+                        .list();
+                page.forEach(shop -> index.put(shop.getId(), shop.getName()));
+                if (page.size() < BLOOM_LOAD_PAGE_SIZE) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1).getId();
+            }
+            synchronized (nameIndexLock) {
+                // 回放扫描期间的增量更新后再替换
+                nameIndexJournal.forEach(index::put);
+                shopNameIndex = index;
+            }
+            nameIndexReady = true;
+            log.info("商铺名称索引重建完成, size={}", index.size());
+        } catch (Exception e) {
+            log.error("商铺名称索引重建失败", e);
+        } finally {
+            synchronized (nameIndexLock) {
+                nameIndexJournal = null;
+            }
+        }
+    }
+
+    /**
+     * 增量更新名称索引，重建期间同时记入日志
+     */
+    private void applyNameIndex(Long id, String name) {
+        synchronized (nameIndexLock) {
+            shopNameIndex.put(id, name);
+            if (nameIndexJournal != null) {
+                nameIndexJournal.put(id, name);
+            }
+        }
+    }
+
+    private void updateNameIndex(Long id, String name) {
+        applyNameIndex(id, name);
+        stringRedisTemplate.convertAndSend(SHOP_INDEX_CHANNEL, id + ":" + name);
+    }
+
+    /**
+     * 分页扫描tb_shop的id重建布隆过滤器
+     */
+    @Override
+    public void rebuildBloomFilter() {
+        try {
+            List<String> ids = new ArrayList<>();
+            long lastId = 0;
+            while (true) {
+                List<Shop> page = lambdaQuery()
+                        .select(Shop::getId)
+                        .gt(Shop::getId, lastId)
+                        .orderByAsc(Shop::getId)
+                        .last("LIMIT " + BLOOM_LOAD_PAGE_SIZE)
+                        .list();
+                page.forEach(shop -> ids.add(shop.getId().toString()));
+                if (!page.isEmpty()) {
+                    lastId = page.get(page.size() - 1).getId();
+                }
+                if (page.size() < BLOOM_LOAD_PAGE_SIZE) {
+                    break;
+                }
+            }
+            shopBloomFilter.rebuild(ids);
+            // 扫描期间新增的商铺可能写到了被覆盖的旧bitmap里，补加一次
+            lambdaQuery().select(Shop::getId).gt(Shop::getId, lastId).list()
+                    .forEach(shop -> shopBloomFilter.add(shop.getId().toString()));
+            bloomReady = true;
+            log.info("商铺布隆过滤器重建完成, size={}, bits={}, hashes={}",
+                    ids.size(), shopBloomFilter.getNumBits(), shopBloomFilter.getNumHashFunctions());
+        } catch (Exception e) {
+            log.error("商铺布隆过滤器重建失败", e);
+        }
+    }
+
+    private void syncBloomFilter() {
+        try {
+            shopBloomFilter.mergeFromRedis();
+        } catch (Exception e) {
+            log.error("同步商铺布隆过滤器失败", e);
+        }
+    }
+
+    /**
+     * 新增商铺，并加入布隆过滤器
+     * @param shop
+     * @return
+     */
+    @Override
+    public Result saveShop(Shop shop) {
+        //1.写入数据库
+        save(shop);
+        //2.加入布隆过滤器，并通知其他节点
+        String id = shop.getId().toString();
+        shopBloomFilter.add(id);
+        stringRedisTemplate.convertAndSend(SHOP_BLOOM_CHANNEL, id);
+        //3.加入GEO索引和名称索引
+        addToGeo(shop);
+        updateNameIndex(shop.getId(), shop.getName());
+        return Result.ok(shop.getId());
+    }
+
+    private void addToGeo(Shop shop) {
+        if (shop == null || shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+            return;
+        }
+        stringRedisTemplate.opsForGeo().add(
+                SHOP_GEO_KEY + shop.getTypeId(), new Point(shop.getX(), shop.getY()), shop.getId().toString());
+    }
+
+    /**
+     * 根据类型滚动查询商铺，传入坐标时按距离由近到远排序
+     * @param typeId 商铺类型
+     * @param current 页码，只在按距离排序时使用
+     * @param lastId 上一页最后一个商铺的id
+     * @param x 经度
+     * @param y 纬度
+     * @return ScrollResult
+     */
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current, Long lastId, Double x, Double y) {
+        //1.没有坐标，按id键集分页：WHERE type_id = ? AND id > lastId ORDER BY id LIMIT n，走(type_id, id)索引，不查总数
+        if (x == null || y == null) {
+            List<Shop> shops = lambdaQuery()
+                    .eq(Shop::getTypeId, typeId)
+                    .gt(lastId != null, Shop::getId, lastId)
+                    .orderByAsc(Shop::getId)
+                    .last("LIMIT " + SystemConstants.DEFAULT_PAGE_SIZE)
+                    .list();
+            return Result.ok(toScrollResult(shops));
+        }
+        //2.计算分页参数
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+        //3.GEOSEARCH shop:geo:{typeId} FROMLONLAT x y BYRADIUS r m ASC COUNT end WITHDIST
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().search(
+                SHOP_GEO_KEY + typeId,
+                GeoReference.fromCoordinate(x, y),
+                new Distance(SystemConstants.GEO_SEARCH_RADIUS),
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending().limit(end));
+        if (results == null || results.getContent().size() <= from) {
+            ScrollResult r = new ScrollResult();
+            r.setList(Collections.emptyList());
+            return Result.ok(r);
+        }
+        //4.截取 from ~ end 的部分
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
+        List<Long> ids = new ArrayList<>(end - from);
+        Map<Long, Double> distanceMap = new HashMap<>(end - from);
+        list.stream().skip(from).forEach(result -> {
+            Long shopId = Long.valueOf(result.getContent().getName());
+            ids.add(shopId);
+            distanceMap.put(shopId, result.getDistance().getValue());
+        });
+        //5.批量从缓存查询商铺详情，未命中的一次IN查询
+        Map<Long, Shop> shopMap = cacheClient.queryBatchWithPassThrough(CACHE_SHOP_KEY, ids, Shop.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        //6.按距离顺序组装结果，缓存中的对象是共享的，拷贝后再填距离
+        List<Shop> shops = new ArrayList<>(ids.size());
+        for (Long shopId : ids) {
+            Shop cached = shopMap.get(shopId);
+            if (cached == null) {
+                continue;
+            }
+            Shop shop = BeanUtil.copyProperties(cached, Shop.class);
+            shop.setDistance(distanceMap.get(shopId));
+            shops.add(shop);
+        }
+        ScrollResult r = new ScrollResult();
+        r.setList(shops);
+        return Result.ok(r);
+    }
+
+    /**
+     * 根据名称关键字滚动查询商铺
+     * <p>
+     * 有关键字且名称索引可用时，从倒排索引拿到按相关度排序的id，用 offset 翻页；
+     * 否则按id键集分页查数据库。
+     * </p>
+     * @param name 名称关键字
+     * @param lastId 上一页最后一个商铺的id，数据库查询时使用
+     * @param offset 已经返回的条数，索引查询时使用
+     * @return ScrollResult
+     */
+    @Override
+    public Result queryShopByName(String name, Long lastId, Integer offset) {
+        //1.有关键字且索引可用，走倒排索引
+        if (StrUtil.isNotBlank(name) && nameIndexReady) {
+            List<Long> ranked = shopNameIndex.search(name);
+            int from = Math.min(offset == null ? 0 : offset, ranked.size());
+            int end = Math.min(from + SystemConstants.MAX_PAGE_SIZE, ranked.size());
+            List<Long> ids = ranked.subList(from, end);
+            //2.批量从缓存查询商铺详情，保持索引给出的顺序
+            Map<Long, Shop> shopMap = ids.isEmpty() ? Collections.emptyMap()
+                    : cacheClient.queryBatchWithPassThrough(CACHE_SHOP_KEY, ids, Shop.class,
+                    missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                    CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            List<Shop> shops = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                Shop shop = shopMap.get(id);
+                if (shop != null) {
+                    shops.add(shop);
+                }
+            }
+            ScrollResult r = toScrollResult(shops);
+            r.setOffset(end);
+            return Result.ok(r);
+        }
+        //3.否则查数据库
+        List<Shop> shops = lambdaQuery()
+                .like(StrUtil.isNotBlank(name), Shop::getName, name)
+                .gt(lastId != null, Shop::getId, lastId)
+                .orderByAsc(Shop::getId)
+                .last("LIMIT " + SystemConstants.MAX_PAGE_SIZE)
+                .list();
+        return Result.ok(toScrollResult(shops));
+    }
+
+    private static ScrollResult toScrollResult(List<Shop> shops) {
+        ScrollResult r = new ScrollResult();
+        r.setList(shops);
+        if (!shops.isEmpty()) {
+            r.setLastId(shops.get(shops.size() - 1).getId());
+        }
+        return r;
+    }
+
     /**
      * 使用redis更新店铺
      * @param shop
@@ -43,10 +395,25 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if(id==null){
             return Result.fail("id不能为空！");
         }
+        Shop old = getById(id);
+        if (old == null) {
+            return Result.fail("店铺不存在！");
+        }
         //1.先更新数据库
         updateById(shop);
-        //2.再删除redis的缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY+id);
+        //2.再删除redis的缓存，并通知所有节点清掉本地缓存
+        cacheClient.delete(CACHE_SHOP_KEY+id);
+        //3.类型或坐标变化时更新GEO索引
+        if (shop.getTypeId() != null && !shop.getTypeId().equals(old.getTypeId())) {
+            stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + old.getTypeId(), id.toString());
+        }
+        if (shop.getTypeId() != null || shop.getX() != null || shop.getY() != null) {
+            addToGeo(getById(id));
+        }
+        //4.名称变化时更新名称索引
+        if (shop.getName() != null && !shop.getName().equals(old.getName())) {
+            updateNameIndex(id, shop.getName());
+        }
         return Result.ok();
 
     }
@@ -62,7 +429,10 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     private CacheClient cacheClient;
     @Override
     public Result getShopById(Long id) {
-
+        // 布隆过滤器判断一定不存在的id，直接返回，不访问Redis和数据库
+        if (bloomReady && !shopBloomFilter.mightContain(id.toString())) {
+            return Result.fail("店铺不存在！");
+        }
 
         // 解决缓存穿透
         Shop shop = cacheClient
@@ -0,0 +1,284 @@
+package com.hmdp.service.impl;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.SignMonth;
+import com.hmdp.mapper.SignMonthMapper;
+import com.hmdp.service.ISignMonthService;
+import com.hmdp.utils.UserHolder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.LOCK_SIGN_ARCHIVE_KEY;
+import static com.hmdp.utils.RedisConstants.USER_SIGN_KEY;
+import static com.hmdp.utils.SystemConstants.SIGN_ARCHIVE_BATCH_SIZE;
+import static com.hmdp.utils.SystemConstants.SIGN_STREAK_MAX_MONTHS;
+
+/**
+ * <p>
+ * 签到服务：当月签到保存在Redis位图 sign:{userId}:{yyyyMM}，第 d 天对应 offset d-1；
+ * 之前的月份定时批量归档到 tb_sign_month，一个用户一个月一行。
+ * </p>
+ */
+@Slf4j
+@Service
+public class SignMonthServiceImpl extends ServiceImpl<SignMonthMapper, SignMonth> implements ISignMonthService {
+
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+
+    /**
+     * BITFIELD key GET u31 0：一次读出整月（最多31天）
+     */
+    private static final BitFieldSubCommands READ_MONTH = BitFieldSubCommands.create()
+            .get(BitFieldSubCommands.BitFieldType.unsigned(31)).valueAt(0);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Value("${hmdp.sign.archive-interval:24h}")
+    private Duration archiveInterval;
+
+    private final ScheduledExecutorService archiveExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    @PostConstruct
+    private void init() {
+        archiveExecutor.scheduleWithFixedDelay(this::archive,
+                0, archiveInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        archiveExecutor.shutdownNow();
+    }
+
+    @Override
+    public Result sign() {
+        // 1.获取当前登录用户
+        Long userId = UserHolder.getUser().getId();
+        // 2.获取日期，拼接key
+        LocalDate now = LocalDate.now();
+        String key = signKey(userId, YearMonth.from(now));
+        // 3.写入Redis SETBIT key offset 1
+        stringRedisTemplate.opsForValue().setBit(key, now.getDayOfMonth() - 1, true);
+        return Result.ok();
+    }
+
+    @Override
+    public Result signCount() {
+        // 1.获取当前登录用户和日期
+        Long userId = UserHolder.getUser().getId();
+        LocalDate today = LocalDate.now();
+        YearMonth current = YearMonth.from(today);
+        int currentBits = toBits(stringRedisTemplate.opsForValue().bitField(signKey(userId, current), READ_MONTH));
+        // 2.只有本月从1号起一直连续签到才需要往前数，这时一次性读出之前的月份
+        Map<YearMonth, Integer> history = new HashMap<>();
+        return Result.ok(streak(today, month -> {
+            if (month.equals(current)) {
+                return currentBits;
+            }
+            if (history.isEmpty()) {
+                history.putAll(loadHistory(userId, current));
+            }
+            return history.getOrDefault(month, 0);
+        }));
+    }
+
+    /**
+     * 截至 today 的连续签到天数，可以跨月，最多往前数到 SIGN_STREAK_MAX_MONTHS 个月（含本月）
+     *
+     * @param bitsOf 某月的签到位图，第 d 天签到则第 d-1 位为1
+     */
+    static int streak(LocalDate today, Function<YearMonth, Integer> bitsOf) {
+        YearMonth month = YearMonth.from(today);
+        YearMonth earliest = month.minusMonths(SIGN_STREAK_MAX_MONTHS - 1);
+        int bits = bitsOf.apply(month);
+        // 2.从今天开始往前数，今天还没签到则从昨天开始
+        int start = today.getDayOfMonth() - 1;
+        if ((bits >>> start & 1) == 0) {
+            start--;
+        }
+        int count = 0;
+        while (true) {
+            if (start >= 0) {
+                int run = runEndingAt(bits, start);
+                count += run;
+                if (run <= start) {
+                    // 中间断签
+                    break;
+                }
+            }
+            // 3.本月从月初起全部连续，继续数上个月
+            month = month.minusMonths(1);
+            if (month.isBefore(earliest)) {
+                break;
+            }
+            bits = bitsOf.apply(month);
+            if (bits == 0) {
+                break;
+            }
+            start = month.lengthOfMonth() - 1;
+        }
+        return count;
+    }
+
+    /**
+     * 第 start 位往低位方向连续为1的位数：找出不高于 start 的最高的0位
+     */
+    static int runEndingAt(int bits, int start) {
+        int zeros = ~bits & ((1 << (start + 1)) - 1);
+        if (zeros == 0) {
+            return start + 1;
+        }
+        return start - (31 - Integer.numberOfLeadingZeros(zeros));
+    }
+
+    /**
+     * 读取本月之前 SIGN_STREAK_MAX_MONTHS-1 个月的签到位图：一次pipeline读Redis中还没归档的位图，
+     * 一次范围查询读 tb_sign_month，两者合并。没有签到的月份也放一个0
+     */
+    private Map<YearMonth, Integer> loadHistory(Long userId, YearMonth current) {
+        List<YearMonth> months = new ArrayList<>(SIGN_STREAK_MAX_MONTHS - 1);
+        for (int i = 1; i < SIGN_STREAK_MAX_MONTHS; i++) {
+            months.add(current.minusMonths(i));
+        }
+        // 1.BITFIELD sign:{userId}:{yyyyMM} GET u31 0
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (YearMonth month : months) {
+                stringConnection.bitfield(signKey(userId, month), READ_MONTH);
+            }
+            return null;
+        });
+        Map<YearMonth, Integer> history = new HashMap<>();
+        for (int i = 0; i < months.size(); i++) {
+            history.put(months.get(i), toBits((List<?>) results.get(i)));
+        }
+        // 2.WHERE user_id = ? AND month BETWEEN ? AND ?，走 uk_user_month
+        lambdaQuery()
+                .eq(SignMonth::getUserId, userId)
+                .between(SignMonth::getMonth,
+                        Integer.valueOf(months.get(months.size() - 1).format(MONTH_FORMATTER)),
+                        Integer.valueOf(months.get(0).format(MONTH_FORMATTER)))
+                .list()
+                .forEach(sign -> history.merge(YearMonth.parse(String.valueOf(sign.getMonth()), MONTH_FORMATTER),
+                        sign.getBits(), (a, b) -> a | b));
+        return history;
+    }
+
+    /**
+     * BITFIELD 的返回结果转成位图，key不存在时为0
+     */
+    private static int toBits(List<?> result) {
+        return result == null || result.isEmpty() || result.get(0) == null
+                ? 0 : toBits(((Number) result.get(0)).longValue());
+    }
+
+    /**
+     * BITFIELD u31 读出的值中第1天是最高位（第30位），翻转成第1天在第0位
+     */
+    static int toBits(long value) {
+        return Integer.reverse((int) value) >>> 1;
+    }
+
+    private static String signKey(Long userId, YearMonth month) {
+        return USER_SIGN_KEY + userId + ":" + month.format(MONTH_FORMATTER);
+    }
+
+    /**
+     * SCAN 出之前月份的签到key，每批用一次pipeline读出位图，一条 INSERT ... ON DUPLICATE KEY UPDATE 写入后删除
+     */
+    @Override
+    public void archive() {
+        RLock lock = redissonClient.getLock(LOCK_SIGN_ARCHIVE_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            String current = YearMonth.now().format(MONTH_FORMATTER);
+            ScanOptions options = ScanOptions.scanOptions().match(USER_SIGN_KEY + "*").count(1000).build();
+            List<String> batch = new ArrayList<>(SIGN_ARCHIVE_BATCH_SIZE);
+            int archived = 0;
+            try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+                while (cursor.hasNext()) {
+                    String key = cursor.next();
+                    // yyyyMM 的字符串顺序和时间顺序一致
+                    if (key.substring(key.lastIndexOf(':') + 1).compareTo(current) >= 0) {
+                        continue;
+                    }
+                    batch.add(key);
+                    if (batch.size() == SIGN_ARCHIVE_BATCH_SIZE) {
+                        archived += archiveBatch(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                archived += archiveBatch(batch);
+            }
+            if (archived > 0) {
+                log.info("签到归档完成, count={}", archived);
+            }
+        } catch (Exception e) {
+            log.error("签到归档失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int archiveBatch(List<String> keys) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String key : keys) {
+                stringConnection.bitfield(key, READ_MONTH);
+            }
+            return null;
+        });
+        List<SignMonth> signs = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            // sign:{userId}:{yyyyMM}
+            String[] parts = keys.get(i).split(":");
+            List<?> value = (List<?>) results.get(i);
+            if (parts.length != 3 || value == null || value.isEmpty() || value.get(0) == null) {
+                continue;
+            }
+            SignMonth sign = new SignMonth();
+            sign.setUserId(Long.valueOf(parts[1]));
+            sign.setMonth(Integer.valueOf(parts[2]));
+            sign.setBits(toBits(((Number) value.get(0)).longValue()));
+            signs.add(sign);
+        }
+        if (!signs.isEmpty()) {
+            baseMapper.upsertBatch(signs);
+        }
+        stringRedisTemplate.delete(keys);
+        return signs.size();
+    }
+}
@@ -11,6 +11,7 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.ISessionStore;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RegexUtils;
 import jakarta.annotation.Resource;
@@ -25,12 +26,15 @@ import org.springframework.stereotype.Service;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.CopyOption;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.PROVISION_BATCH_SIZE;
+import static com.hmdp.utils.SystemConstants.PROVISION_PHONE_PREFIX;
 import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 
 /**
@@ -49,6 +53,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private ISessionStore sessionStore;
+
     /**
      * 登出功能
      * @return
@@ -61,9 +68,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         if(StrUtil.isBlank(token)){
             return Result.fail("未登录");
         }
-        //3.不为空就清空redis，然后返回退出成功
-        String tokenKey = LOGIN_USER_KEY + token;
-        stringRedisTemplate.delete(tokenKey);
+        //3.不为空就清空会话，然后返回退出成功
+        sessionStore.remove(token);
 
         return Result.ok();
     }
@@ -89,12 +95,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         }
 
         // 生成 token...
-        String token = UUID.randomUUID().toString();
         UserDTO dto = BeanUtil.copyProperties(user, UserDTO.class);
-        Map<String, Object> map = BeanUtil.beanToMap(dto, new HashMap<>(),
-                CopyOptions.create().setIgnoreNullValue(true).setFieldValueEditor((f, v) -> v.toString()));
-        stringRedisTemplate.opsForHash().putAll(LOGIN_USER_KEY + token, map);
-        stringRedisTemplate.expire(LOGIN_USER_KEY + token, LOGIN_CODE_TTL, TimeUnit.MINUTES);
+        String token = sessionStore.create(dto);
 
 //
 //        //4.判断用户是否存在
@@ -123,6 +125,65 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     }
 
+    /**
+     * 批量创建登录会话：按id分页读取已有用户，每页一次pipeline写入会话；
+     * 用户不足时按批次多行插入新用户再创建会话
+     */
+    @Override
+    public int provisionSessions(int count, boolean createMissing, Writer writer) throws IOException {
+        int provisioned = 0;
+        long lastId = 0;
+        //1.已有用户
+        while (provisioned < count) {
+            List<User> users = query()
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + Math.min(PROVISION_BATCH_SIZE, count - provisioned))
+                    .list();
+            if (users.isEmpty()) {
+                break;
+            }
+            provisioned += writeSessions(users, writer);
+            lastId = users.get(users.size() - 1).getId();
+            log.debug("已创建会话 {}/{}", provisioned, count);
+        }
+        if (provisioned >= count || !createMissing) {
+            return provisioned;
+        }
+        //2.用户不足，批量创建，手机号在已有压测号段之后顺延
+        User last = query().likeRight("phone", PROVISION_PHONE_PREFIX)
+                .orderByDesc("phone").last("LIMIT 1").one();
+        long next = last == null ? 0 : Long.parseLong(last.getPhone().substring(PROVISION_PHONE_PREFIX.length())) + 1;
+        while (provisioned < count) {
+            int size = Math.min(PROVISION_BATCH_SIZE, count - provisioned);
+            List<User> users = new ArrayList<>(size);
+            List<String> phones = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                String phone = PROVISION_PHONE_PREFIX + String.format("%08d", next++);
+                phones.add(phone);
+                users.add(new User().setPhone(phone).setNickName(RandomUtil.randomString(10)));
+            }
+            getBaseMapper().insertBatch(users);
+            // 多行插入拿不到全部自增id，按手机号查回来
+            provisioned += writeSessions(query().in("phone", phones).list(), writer);
+            log.debug("已创建用户及会话 {}/{}", provisioned, count);
+        }
+        return provisioned;
+    }
+
+    private int writeSessions(List<User> users, Writer writer) throws IOException {
+        List<UserDTO> dtos = users.stream()
+                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+                .collect(Collectors.toList());
+        List<String> tokens = sessionStore.createAll(dtos);
+        for (String token : tokens) {
+            writer.write(token);
+            writer.write('\n');
+        }
+        writer.flush();
+        return tokens.size();
+    }
+
     private User createNewUser(String phone) {
         User user = new User();
         user.setPhone(phone);
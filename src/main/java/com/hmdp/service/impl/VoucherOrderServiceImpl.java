@@ -10,20 +10,23 @@ import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
-import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillWindowCache;
+import com.hmdp.utils.SnowflakeIdWorker;
+import com.hmdp.utils.SoldOutRegistry;
+import com.hmdp.utils.StockShardManager;
 import com.hmdp.utils.UserHolder;
-import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
 import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.Range;
 import org.springframework.data.redis.connection.stream.*;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
@@ -31,17 +34,21 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.LOCK_SECKILL_RELAY_KEY;
 import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_ORDER;
 
 @Slf4j
 @Service
-public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
+public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder>
+        implements IVoucherOrderService, SmartInitializingSingleton {
 
     @Resource
     private ISeckillVoucherService seckillVoucherService;
@@ -49,25 +56,59 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private RedisIdWorker redisIdWorker;
 
+    /**
+     * hmdp.id.generator=snowflake 时才存在，用进程内的雪花算法代替Redis发号
+     */
+    @Autowired(required = false)
+    private SnowflakeIdWorker snowflakeIdWorker;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private ApplicationContext applicationContext;
+
+    @Resource
+    private StockShardManager stockShardManager;
+
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private SeckillWindowCache seckillWindowCache;
+
     /**
-     * 当前类初始化完毕就立马执行该方法
+     * 消费者数量，即组 g1 中的 c1..cN
      */
-    @PostConstruct
-    private void init() {
-        // 执行线程任务
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
-    }
+    @Value("${hmdp.order.consumer-count:4}")
+    private int consumerCount;
+
+    /**
+     * 每次 XREADGROUP 读取的消息数量（COUNT）
+     */
+    @Value("${hmdp.order.batch-size:50}")
+    private int batchSize;
+
+    /**
+     * pending消息空闲超过该时间才会被回收
+     */
+    @Value("${hmdp.order.pending-idle:30s}")
+    private Duration pendingIdle;
+
+    /**
+     * 最大投递次数，超过后转入死信队列
+     */
+    @Value("${hmdp.order.max-retries:3}")
+    private int maxRetries;
 
     /**
-     * 线程池
+     * pending-list回收间隔
      */
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    @Value("${hmdp.order.recovery-interval:5s}")
+    private Duration recoveryInterval;
 
     /**
      * 队列名
@@ -75,17 +116,92 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private static final String queueName = "stream.orders";
 
     /**
-     * 线程任务: 不断从消息队列中获取订单
+     * 死信队列名
+     */
+    private static final String DEAD_LETTER_QUEUE = "stream.orders.dlq";
+
+    /**
+     * 回收pending消息时使用的消费者名
+     */
+    private static final String RECOVERY_CONSUMER = "recovery";
+
+    /**
+     * 消费者组名
+     */
+    private static final String groupName = "g1";
+
+    /**
+     * 加载 创建消息队列和消费者组 的Lua脚本
+     */
+    private static final DefaultRedisScript<Long> STREAM_MQ_SCRIPT;
+
+    static {
+        STREAM_MQ_SCRIPT = new DefaultRedisScript<>();
+        STREAM_MQ_SCRIPT.setLocation(new ClassPathResource("lua/stream-mq.lua"));
+        STREAM_MQ_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 线程池，每个消费者占一个线程
+     */
+    private ExecutorService seckillOrderExecutor;
+
+    /**
+     * pending-list回收线程
+     */
+    private ScheduledExecutorService pendingRecoveryExecutor;
+
+    private volatile boolean running = true;
+
+    /**
+     * 所有单例初始化完毕后再启动消费者，此时可以拿到带事务的代理对象
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        proxy = applicationContext.getBean(IVoucherOrderService.class);
+        // 确保 stream.orders 和消费者组 g1 已经存在
+        stringRedisTemplate.execute(STREAM_MQ_SCRIPT, Collections.emptyList(), queueName, groupName);
+        seckillOrderExecutor = Executors.newFixedThreadPool(consumerCount);
+        for (int i = 1; i <= consumerCount; i++) {
+            seckillOrderExecutor.submit(new VoucherOrderHandler("c" + i));
+        }
+        pendingRecoveryExecutor = Executors.newSingleThreadScheduledExecutor();
+        pendingRecoveryExecutor.scheduleWithFixedDelay(new PendingOrderRecovery(),
+                recoveryInterval.toMillis(), recoveryInterval.toMillis(), TimeUnit.MILLISECONDS);
+        pendingRecoveryExecutor.scheduleWithFixedDelay(new ShardOrderRelay(),
+                recoveryInterval.toMillis(), recoveryInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        if (seckillOrderExecutor != null) {
+            seckillOrderExecutor.shutdownNow();
+        }
+        if (pendingRecoveryExecutor != null) {
+            pendingRecoveryExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 线程任务: 不断从消息队列中批量获取订单
      */
     private class VoucherOrderHandler implements Runnable {
+
+        private final Consumer consumer;
+
+        private VoucherOrderHandler(String consumerName) {
+            this.consumer = Consumer.from(groupName, consumerName);
+        }
+
         @Override
         public void run() {
-            while (true) {
+            while (running) {
                 try {
-                    // 1、从消息队列中获取订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 1000 STREAMS streams.order >
+                    // 1、从消息队列中批量获取订单信息 XREADGROUP GROUP g1 cN COUNT n BLOCK 1000 STREAMS stream.orders >
                     List<MapRecord<String, Object, Object>> messageList = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(1)),
+                            consumer,
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofSeconds(1)),
                             StreamOffset.create(queueName, ReadOffset.lastConsumed())
                     );
                     // 2、判断消息获取是否成功
@@ -93,77 +209,141 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                         // 2.1 消息获取失败，说明没有消息，进入下一次循环获取消息
                         continue;
                     }
-                    // 3、消息获取成功，可以下单
-                    // 将消息转成VoucherOrder对象
-                    MapRecord<String, Object, Object> record = messageList.get(0);
-                    Map<Object, Object> messageMap = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(messageMap, new VoucherOrder(), true);
-                    handleVoucherOrder(voucherOrder);
-                    // 4、ACK确认 SACK stream.orders g1 id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
+                    // 3、消息获取成功，整批下单并一次性ACK
+                    handleVoucherOrderBatch(messageList);
                 } catch (Exception e) {
+                    if (!running) {
+                        break;
+                    }
+                    // 失败的消息留在pending-list中，由PendingOrderRecovery回收，这里继续读新消息
                     log.error("处理订单异常", e);
-                    // 处理异常消息
-                    handlePendingList();
                 }
             }
         }
     }
 
-    private void handlePendingList() {
-        while (true) {
+    /**
+     * 定时任务: 回收 pending-list 中空闲过久的消息
+     * 与消费者并行运行，消费者只管读新消息，失败的消息留在pending-list里由这里统一处理
+     */
+    private class PendingOrderRecovery implements Runnable {
+        @Override
+        public void run() {
             try {
-                // 1、从pendingList中获取订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 1000 STREAMS streams.order 0
-                List<MapRecord<String, Object, Object>> messageList = stringRedisTemplate.opsForStream().read(
-                        Consumer.from("g1", "c1"),
-                        StreamReadOptions.empty().count(1).block(Duration.ofSeconds(1)),
-                        StreamOffset.create(queueName, ReadOffset.from("0"))
-                );
-                // 2、判断pendingList中是否有效性
-                if (messageList == null || messageList.isEmpty()) {
-                    // 2.1 pendingList中没有消息，直接结束循环
-                    break;
+                // 一次最多回收若干批，避免单次任务占用过久；每批从上一批最后一条之后开始，
+                // 前面还没空闲够的消息不会挡住后面已经空闲的消息
+                String startId = "-";
+                for (int round = 0; round < 10 && running; round++) {
+                    RecordId lastId = recoverPendingBatch(startId);
+                    if (lastId == null) {
+                        break;
+                    }
+                    startId = nextId(lastId);
                 }
-                // 3、pendingList中有消息
-                // 将消息转成VoucherOrder对象
-                MapRecord<String, Object, Object> record = messageList.get(0);
-                Map<Object, Object> messageMap = record.getValue();
-                VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(messageMap, new VoucherOrder(), true);
-                handleVoucherOrder(voucherOrder);
-                // 4、ACK确认 SACK stream.orders g1 id
-                stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
             } catch (Exception e) {
-                log.error("处理订单异常", e);
-                // 这里不用调自己，直接就进入下一次循环，再从pendingList中取，这里只需要休眠一下，防止获取消息太频繁
+                log.error("回收pending订单异常", e);
+            }
+        }
+    }
+
+    /**
+     * 回收一批pending消息
+     * 1、XPENDING 查询所有消费者的pending消息，拿到空闲时间和投递次数
+     * 2、超过重试次数的消息转入死信队列 stream.orders.dlq 并ACK
+     * 3、其余空闲超时的消息 XCLAIM 给回收消费者，批量下单；整批失败则逐条重试，隔离毒消息
+     *
+     * @param startId 从这个id开始（包含）查询pending-list
+     * @return 本页已满时返回本页最后一条消息的id，否则返回null表示已经到底
+     */
+    private RecordId recoverPendingBatch(String startId) {
+        // 1、XPENDING stream.orders g1 startId + n
+        PendingMessages pendingMessages = stringRedisTemplate.opsForStream()
+                .pending(queueName, groupName, Range.rightUnbounded(Range.Bound.inclusive(startId)), batchSize);
+        if (pendingMessages == null || pendingMessages.isEmpty()) {
+            return null;
+        }
+        List<RecordId> claimIds = new ArrayList<>();
+        List<RecordId> deadIds = new ArrayList<>();
+        for (PendingMessage pendingMessage : pendingMessages) {
+            if (pendingMessage.getElapsedTimeSinceLastDelivery().compareTo(pendingIdle) < 0) {
+                // 还没空闲够，可能正被其他消费者处理
+                continue;
+            }
+            if (pendingMessage.getTotalDeliveryCount() > maxRetries) {
+                deadIds.add(pendingMessage.getId());
+            } else {
+                claimIds.add(pendingMessage.getId());
+            }
+        }
+        // 2、转入死信队列
+        for (RecordId deadId : deadIds) {
+            moveToDeadLetter(deadId);
+        }
+        // 3、认领并重新处理
+        if (!claimIds.isEmpty()) {
+            // XCLAIM stream.orders g1 recovery <min-idle> id1 id2 ...（会让投递次数+1）
+            List<MapRecord<String, Object, Object>> claimed = stringRedisTemplate.opsForStream().claim(
+                    queueName, groupName, RECOVERY_CONSUMER, pendingIdle, claimIds.toArray(new RecordId[0]));
+            if (claimed != null && !claimed.isEmpty()) {
                 try {
-                    Thread.sleep(20);
-                } catch (InterruptedException ex) {
-                    log.error("线程休眠异常", ex);
+                    handleVoucherOrderBatch(claimed);
+                } catch (Exception e) {
+                    log.warn("pending订单整批处理失败，改为逐条处理, size={}", claimed.size(), e);
+                    for (MapRecord<String, Object, Object> record : claimed) {
+                        try {
+                            handleVoucherOrderBatch(Collections.singletonList(record));
+                        } catch (Exception ex) {
+                            // 保留在pending-list中，等待下次回收，超过重试次数后进入死信队列
+                            log.error("pending订单处理失败, recordId={}", record.getId(), ex);
+                        }
+                    }
                 }
             }
         }
+        return pendingMessages.size() < batchSize ? null : pendingMessages.get(pendingMessages.size() - 1).getId();
     }
 
     /**
-     * 创建订单
+     * 紧跟在 id 之后的消息id（序号加一），作为下一页的起点
+     */
+    private static String nextId(RecordId id) {
+        return id.getTimestamp() + "-" + (id.getSequence() + 1);
+    }
+
+    /**
+     * 将消息转入死信队列并从消费者组中ACK
      *
-     * @param voucherOrder
+     * @param recordId 消息id
      */
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        Long userId = voucherOrder.getUserId();
-        RLock lock = redissonClient.getLock(RedisConstants.LOCK_ORDER_KEY + userId);
-        boolean isLock = lock.tryLock();
-        if (!isLock) {
-            // 索取锁失败，重试或者直接抛异常（这个业务是一人一单，所以直接返回失败信息）
-            log.error("一人只能下一单");
-            return;
+    private void moveToDeadLetter(RecordId recordId) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(queueName, Range.closed(recordId.getValue(), recordId.getValue()));
+        if (records != null && !records.isEmpty()) {
+            Map<Object, Object> value = new HashMap<>(records.get(0).getValue());
+            value.put("sourceId", recordId.getValue());
+            stringRedisTemplate.opsForStream().add(DEAD_LETTER_QUEUE, value);
         }
-        try {
-            // 创建订单（使用代理对象调用，是为了确保事务生效）
-            proxy.createVoucherOrder(voucherOrder);
-        } finally {
-            lock.unlock();
+        stringRedisTemplate.opsForStream().acknowledge(queueName, groupName, recordId);
+        log.error("订单消息超过最大重试次数，已转入死信队列, recordId={}", recordId);
+    }
+
+    /**
+     * 将一批消息转成订单，在一个事务中落库，然后用一次 XACK 确认整批消息
+     *
+     * @param messageList 一批消息
+     */
+    private void handleVoucherOrderBatch(List<MapRecord<String, Object, Object>> messageList) {
+        List<VoucherOrder> voucherOrders = new ArrayList<>(messageList.size());
+        RecordId[] recordIds = new RecordId[messageList.size()];
+        for (int i = 0; i < messageList.size(); i++) {
+            MapRecord<String, Object, Object> record = messageList.get(i);
+            voucherOrders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            recordIds[i] = record.getId();
         }
+        // 一人一单已经由Lua脚本中的 seckill:order:{voucherId} 集合保证，这里不再逐个加用户锁
+        proxy.createVoucherOrderBatch(voucherOrders);
+        // ACK确认 XACK stream.orders g1 id1 id2 ...
+        stringRedisTemplate.opsForStream().acknowledge(queueName, groupName, recordIds);
     }
 
     /**
@@ -177,11 +357,30 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
+    /**
+     * 分片库存：在用户所属分片上判重并扣库存，订单记入本分片的待发送订单；分片库存不足时返回3并保留下单资格
+     */
+    private static final DefaultRedisScript<Long> SECKILL_SHARD_SCRIPT;
+
+    /**
+     * 分片库存：从其他分片扣库存，订单记入该分片的待发送订单
+     */
+    private static final DefaultRedisScript<Long> SECKILL_SHARD_TAKE_SCRIPT;
+
+    static {
+        SECKILL_SHARD_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SHARD_SCRIPT.setLocation(new ClassPathResource("lua/seckill-shard.lua"));
+        SECKILL_SHARD_SCRIPT.setResultType(Long.class);
+        SECKILL_SHARD_TAKE_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SHARD_TAKE_SCRIPT.setLocation(new ClassPathResource("lua/seckill-shard-take.lua"));
+        SECKILL_SHARD_TAKE_SCRIPT.setResultType(Long.class);
+    }
+
     /**
      * VoucherOrderServiceImpl类的代理对象
      * 将代理对象的作用域进行提升，方面子线程取用
      */
-    private IVoucherOrderService proxy;
+    private volatile IVoucherOrderService proxy;
 
     /**
      * 抢购秒杀券
@@ -192,37 +391,190 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Transactional
     @Override
     public Result seckillVoucher(Long voucherId) {
+        // 0、不在秒杀时间内、已经售罄的券直接拒绝，不发号也不访问Redis
+        long[] window = seckillWindowCache.get(voucherId);
+        if (window == null) {
+            return Result.fail("秒杀券不存在");
+        }
+        long now = System.currentTimeMillis();
+        if (window[0] > 0 && now < window[0]) {
+            return Result.fail("秒杀尚未开始");
+        }
+        if (window[1] > 0 && now > window[1]) {
+            return Result.fail("秒杀已经结束");
+        }
+        if (soldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
         Long userId = UserHolder.getUser().getId();
-        long orderId = redisIdWorker.nextId(SECKILL_VOUCHER_ORDER);
+        long orderId = snowflakeIdWorker != null
+                ? snowflakeIdWorker.nextId()
+                : redisIdWorker.nextId(SECKILL_VOUCHER_ORDER);
 
         // 1、执行Lua脚本，判断用户是否具有秒杀资格
         Long result = null;
+        int shards;
         try {
-            result = stringRedisTemplate.execute(
+            shards = stockShardManager.shardCount(voucherId);
+            result = shards > 1
+                    ? seckillSharded(voucherId, userId, orderId, shards, window)
+                    : stringRedisTemplate.execute(
                     SECKILL_SCRIPT,
                     Collections.emptyList(),
                     voucherId.toString(),
                     userId.toString(),
-                    String.valueOf(orderId)
+                    String.valueOf(orderId),
+                    String.valueOf(window[0]),
+                    String.valueOf(window[1])
             );
         } catch (Exception e) {
             log.error("Lua脚本执行失败");
             throw new RuntimeException(e);
         }
         if (result != null && !result.equals(0L)) {
-            // result为1表示库存不足，result为2表示用户已下单
+            // result为1表示库存不足，2表示用户已下单，4、5表示按Redis时间尚未开始、已经结束
             int r = result.intValue();
             log.info("Lua result={}, userId={}, voucherId={}", result, userId, voucherId);
-            return Result.fail(r == 2 ? "不能重复下单" : "库存不足");
+            return switch (r) {
+                case 2 -> Result.fail("不能重复下单");
+                case 4 -> Result.fail("秒杀尚未开始");
+                case 5 -> Result.fail("秒杀已经结束");
+                default -> {
+                    markSoldOut(voucherId, shards);
+                    yield Result.fail("库存不足");
+                }
+            };
         }
 
-        // 2、result为0，下单成功，直接返回ok
-        // 索取锁成功，创建代理对象，使用代理对象调用第三方事务方法， 防止事务失效
-        IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
-        this.proxy = proxy;
+        // 2、result为0，下单成功，直接返回ok（订单由消费者异步批量落库）
         return Result.ok();
     }
 
+    /**
+     * 标记售罄：分片券可能只是各分片恰好读到0（库存正在再平衡），确认全部分片都为0才标记
+     */
+    private void markSoldOut(Long voucherId, int shards) {
+        try {
+            if (shards == 1 || stockShardManager.isDepleted(voucherId, shards)) {
+                soldOutRegistry.markSoldOut(voucherId);
+            }
+        } catch (Exception e) {
+            // 售罄标记只是优化，失败时下次再标记
+            log.warn("标记售罄失败 voucherId={}", voucherId, e);
+        }
+    }
+
+    /**
+     * 分片库存下单
+     * 1、在用户所属分片上判断时间窗口并判重：已下单返回2；分片有库存则直接扣减下单返回0
+     * 2、所属分片没有库存时脚本已把用户放进该分片的集合占住资格，再从随机位置开始依次尝试其他分片
+     * 3、其他分片也都没有库存，或者尝试过程中出现异常，释放占位
+     * 扣库存成功的订单先记在该分片的 seckill:pending:{voucherId:i} 中，转发到 stream.orders 后删除
+     *
+     * @return 与 stream-seckill.lua 相同：0 成功，1 库存不足，2 重复下单，4 尚未开始，5 已经结束
+     */
+    private Long seckillSharded(Long voucherId, Long userId, long orderId, int shards, long[] window) {
+        int home = StockShardManager.homeShard(userId, shards);
+        String homeOrderKey = StockShardManager.orderKey(voucherId, home);
+        // 1、所属分片
+        Long result = stringRedisTemplate.execute(
+                SECKILL_SHARD_SCRIPT,
+                Arrays.asList(StockShardManager.stockKey(voucherId, home), homeOrderKey,
+                        StockShardManager.pendingKey(voucherId, home)),
+                userId.toString(),
+                String.valueOf(orderId),
+                String.valueOf(window[0]),
+                String.valueOf(window[1])
+        );
+        if (result != null && result == 0L) {
+            sendShardOrder(voucherId, home, userId, orderId);
+        }
+        if (result == null || result != 3L) {
+            return result;
+        }
+        // 2、其他分片，随机起点避免所属分片卖完的用户都挤到同一个相邻分片
+        // 脚本执行成功但响应丢失时占位也会被释放，用户再次下单产生的重复订单在落库时按 用户+券 过滤
+        boolean ordered = false;
+        try {
+            int offset = ThreadLocalRandom.current().nextInt(shards - 1);
+            for (int shard : StockShardManager.siblings(home, shards, offset)) {
+                Long taken = stringRedisTemplate.execute(
+                        SECKILL_SHARD_TAKE_SCRIPT,
+                        Arrays.asList(StockShardManager.stockKey(voucherId, shard),
+                                StockShardManager.pendingKey(voucherId, shard)),
+                        userId.toString(),
+                        String.valueOf(orderId)
+                );
+                if (taken != null && taken == 0L) {
+                    ordered = true;
+                    sendShardOrder(voucherId, shard, userId, orderId);
+                    return 0L;
+                }
+            }
+            return 1L;
+        } finally {
+            // 3、没有下单成功，释放占位
+            if (!ordered) {
+                stringRedisTemplate.opsForSet().remove(homeOrderKey, userId.toString());
+            }
+        }
+    }
+
+    /**
+     * 把分片上的待发送订单转发到 stream.orders 并删除，失败时留给 ShardOrderRelay 补发
+     */
+    private void sendShardOrder(Long voucherId, int shard, Long userId, long orderId) {
+        try {
+            Map<String, String> message = new HashMap<>(4);
+            message.put("userId", userId.toString());
+            message.put("voucherId", voucherId.toString());
+            message.put("id", String.valueOf(orderId));
+            stringRedisTemplate.opsForStream().add(queueName, message);
+            stringRedisTemplate.opsForHash().delete(StockShardManager.pendingKey(voucherId, shard), String.valueOf(orderId));
+        } catch (Exception e) {
+            log.error("分片订单转发失败，等待补发 voucherId={}, orderId={}", voucherId, orderId, e);
+        }
+    }
+
+    /**
+     * 定时任务: 补发分片上超过 pending-idle 仍未转发的订单（转发前进程退出或Redis异常时留下）
+     * 集群内只有一个实例执行；补发后重复投递的订单在落库时按订单id和 用户+券 过滤
+     */
+    private class ShardOrderRelay implements Runnable {
+        @Override
+        public void run() {
+            RLock lock = redissonClient.getLock(LOCK_SECKILL_RELAY_KEY);
+            if (!lock.tryLock()) {
+                return;
+            }
+            try {
+                long deadline = System.currentTimeMillis() - pendingIdle.toMillis();
+                for (Map.Entry<Long, Integer> entry : stockShardManager.shardedVouchers().entrySet()) {
+                    Long voucherId = entry.getKey();
+                    for (int shard = 0; shard < entry.getValue(); shard++) {
+                        Map<Object, Object> pending = stringRedisTemplate.opsForHash()
+                                .entries(StockShardManager.pendingKey(voucherId, shard));
+                        for (Map.Entry<Object, Object> order : pending.entrySet()) {
+                            // 格式 userId:下单时间
+                            String value = order.getValue().toString();
+                            int colon = value.indexOf(':');
+                            if (Long.parseLong(value.substring(colon + 1)) > deadline) {
+                                continue;
+                            }
+                            log.warn("补发分片订单 voucherId={}, orderId={}", voucherId, order.getKey());
+                            sendShardOrder(voucherId, shard, Long.valueOf(value.substring(0, colon)),
+                                    Long.parseLong(order.getKey().toString()));
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.error("补发分片订单异常", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
     /**
      * 创建订单
      *
@@ -256,5 +608,39 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             throw new RuntimeException("创建秒杀券订单失败");
         }
     }
-}
 
+    /**
+     * 批量创建订单
+     *
+     * @param voucherOrders
+     */
+    @Transactional
+    @Override
+    public void createVoucherOrderBatch(List<VoucherOrder> voucherOrders) {
+        if (voucherOrders == null || voucherOrders.isEmpty()) {
+            return;
+        }
+        // 1、按券分组，每张券一条多行插入、一次扣减库存
+        Map<Long, List<VoucherOrder>> byVoucher = voucherOrders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        for (Map.Entry<Long, List<VoucherOrder>> entry : byVoucher.entrySet()) {
+            // 2、INSERT IGNORE 依赖 uk_user_voucher 去重：消息重复投递、并发消费者同时处理同一用户的订单，
+            // 已经落库的订单被忽略，不会重复下单
+            int rows = getBaseMapper().insertBatch(entry.getValue());
+            if (rows < entry.getValue().size()) {
+                log.warn("订单已存在，跳过 {} 条, voucherId={}", entry.getValue().size() - rows, entry.getKey());
+            }
+            if (rows == 0) {
+                continue;
+            }
+            // 3、按实际插入的行数扣减库存
+            boolean flag = seckillVoucherService.update(new LambdaUpdateWrapper<SeckillVoucher>()
+                    .eq(SeckillVoucher::getVoucherId, entry.getKey())
+                    .ge(SeckillVoucher::getStock, rows)
+                    .setSql("stock = stock - " + rows));
+            if (!flag) {
+                throw new RuntimeException("秒杀券扣减失败, voucherId=" + entry.getKey());
+            }
+        }
+    }
+}
@@ -8,6 +8,10 @@ import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SeckillWindowCache;
+import com.hmdp.utils.SoldOutRegistry;
+import com.hmdp.utils.StockShardManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -30,6 +34,18 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private ISeckillVoucherService seckillVoucherService;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private StockShardManager stockShardManager;
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+    @Resource
+    private SeckillWindowCache seckillWindowCache;
+
+    /**
+     * 新建秒杀券的库存分片数，1 表示不分片
+     */
+    @Value("${hmdp.seckill.stock-shards:1}")
+    private int stockShards;
 
 
     @Override
@@ -53,10 +69,20 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
         // 3. 写入 Redis 库存（关键）
-        stringRedisTemplate.opsForValue().set(
-                RedisConstants.SECKILL_STOCK_KEY + voucher.getId(),
-                voucher.getStock().toString()
-        );
+        int shards = Math.min(stockShards, voucher.getStock());
+        if (shards > 1) {
+            // 热门券：库存均分到多个分片
+            stockShardManager.initShards(voucher.getId(), voucher.getStock(), shards);
+        } else {
+            stringRedisTemplate.opsForValue().set(
+                    RedisConstants.SECKILL_STOCK_KEY + voucher.getId(),
+                    voucher.getStock().toString()
+            );
+        }
+        // 4. 写入秒杀时间窗口
+        seckillWindowCache.put(seckillVoucher);
+        // 5. 清除各节点的售罄标记
+        soldOutRegistry.reset(voucher.getId());
     }
 
 }
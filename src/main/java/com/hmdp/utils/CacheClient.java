@@ -1,35 +1,192 @@
 package com.hmdp.utils;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSON;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
 import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
 import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_SHOP_TTL;
 
 @Component
 @Slf4j
 public class CacheClient {
     private StringRedisTemplate stringRedisTemplate;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 逻辑过期的重建线程池，队列有界，满了直接丢弃（旧数据仍可用，下次请求会再提交）
+     */
+    private static final ThreadPoolExecutor CACHE_REBUILD_EXECUTOR = new ThreadPoolExecutor(
+            10, 10, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1000), new ThreadPoolExecutor.AbortPolicy());
+
+    /**
+     * 正在重建（已提交未完成）的key，用于本地去重
+     */
+    private final Set<String> rebuildingKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * XFetch 的 beta，越大越倾向于提前重建
+     */
+    @Value("${hmdp.cache.xfetch-beta:1.0}")
+    private double xfetchBeta;
+
+    private final LongAdder staleServedCount = new LongAdder();
+    private final LongAdder earlyRefreshCount = new LongAdder();
+    private final LongAdder rebuildCount = new LongAdder();
+    private final LongAdder rebuildFailureCount = new LongAdder();
+    private final LongAdder rebuildRejectedCount = new LongAdder();
+    private final LongAdder rebuildTotalMillis = new LongAdder();
+    private final LongAccumulator rebuildMaxMillis = new LongAccumulator(Math::max, 0L);
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+
+    static {
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("lua/unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 正在进行中的缓存加载，key -> 加载结果
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 互斥锁模式下等待缓存重建的最长时间
+     */
+    @Value("${hmdp.cache.mutex-wait:3s}")
+    private Duration mutexWait;
+
+    /**
+     * 是否开启本地一级缓存（L1），L1 存的是反序列化后的对象，命中时不再访问Redis也不再解析JSON
+     */
+    @Value("${hmdp.cache.local.enabled:true}")
+    private boolean localEnabled;
+
+    @Value("${hmdp.cache.local.capacity:1000}")
+    private int localCapacity;
+
+    @Value("${hmdp.cache.local.ttl:30s}")
+    private Duration localTtl;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private LRUCache<String, Object> localCache;
+
+    /**
+     * 二级缓存（Redis）命中/未命中次数，L1 的统计由 LRUCache 自己维护
+     */
+    private final LongAdder redisHitCount = new LongAdder();
+    private final LongAdder redisMissCount = new LongAdder();
 
     public CacheClient(StringRedisTemplate stringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
     }
 
+    @PostConstruct
+    private void init() {
+        localCache = CacheUtil.newLRUCache(localCapacity, localTtl.toMillis());
+        // 订阅失效广播，其他节点删除缓存时同步清掉本地副本
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> localCache.remove(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+
+    //删除缓存：删除Redis中的key，并广播让所有节点清掉本地缓存
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        localCache.remove(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+
+    //各级缓存的命中统计
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("localEnabled", localEnabled);
+        stats.put("localSize", localCache.size());
+        stats.put("localHit", localCache.getHitCount());
+        stats.put("localMiss", localCache.getMissCount());
+        stats.put("localHitRate", rate(localCache.getHitCount(), localCache.getMissCount()));
+        stats.put("redisHit", redisHitCount.sum());
+        stats.put("redisMiss", redisMissCount.sum());
+        stats.put("redisHitRate", rate(redisHitCount.sum(), redisMissCount.sum()));
+        stats.put("staleServed", staleServedCount.sum());
+        stats.put("earlyRefresh", earlyRefreshCount.sum());
+        stats.put("rebuild", rebuildCount.sum());
+        stats.put("rebuildFailure", rebuildFailureCount.sum());
+        stats.put("rebuildRejected", rebuildRejectedCount.sum());
+        stats.put("rebuildQueued", CACHE_REBUILD_EXECUTOR.getQueue().size());
+        stats.put("rebuildAvgMillis", rebuildCount.sum() == 0 ? 0L : rebuildTotalMillis.sum() / rebuildCount.sum());
+        stats.put("rebuildMaxMillis", rebuildMaxMillis.get());
+        return stats;
+    }
+
+    private static double rate(long hit, long miss) {
+        long total = hit + miss;
+        return total == 0 ? 0D : (double) hit / total;
+    }
+
+    private <R> R getLocal(String key, Class<R> type) {
+        if (!localEnabled) {
+            return null;
+        }
+        Object value = localCache.get(key, false);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    private void putLocal(String key, Object value) {
+        if (localEnabled && value != null) {
+            localCache.put(key, value);
+        }
+    }
+
 
     //方法1：将任意Java对象序列化为json并存储在string类型的key中，并且可以设置TTL过期时间
     public void set(String key, Object value, Long time, TimeUnit timeUnit) {
@@ -37,12 +194,80 @@ public class CacheClient {
     }
 
 
+    //方法：批量查询缓存，依次查本地缓存、一次MGET查redis，剩余的一次性交给dbFallback查库并用pipeline回填redis
+    //注意：返回的对象可能来自本地缓存，调用方修改前需要先拷贝
+    public <R, ID> Map<ID, R> queryBatchWithPassThrough(
+            String keyPrefix, List<ID> ids, Class<R> type, Function<Collection<ID>, Map<ID, R>> dbFallback,
+            Long time, TimeUnit timeUnit) {
+        Map<ID, R> result = new HashMap<>(ids.size());
+        //1.本地缓存
+        List<ID> remoteIds = new ArrayList<>();
+        for (ID id : ids) {
+            R local = getLocal(keyPrefix + id, type);
+            if (local != null) {
+                result.put(id, local);
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+        //2.一次MGET查redis
+        List<String> keys = remoteIds.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+        List<String> jsons = stringRedisTemplate.opsForValue().multiGet(keys);
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            String json = jsons == null ? null : jsons.get(i);
+            if (StrUtil.isNotBlank(json)) {
+                redisHitCount.increment();
+                R r = JSONUtil.toBean(json, type);
+                putLocal(keys.get(i), r);
+                result.put(remoteIds.get(i), r);
+            } else if (json == null) {
+                redisMissCount.increment();
+                missIds.add(remoteIds.get(i));
+            } else {
+                redisHitCount.increment();
+            }
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+        //3.剩余的一次查库，用pipeline回填redis，不存在的写空值
+        Map<ID, R> loaded = dbFallback.apply(missIds);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (ID id : missIds) {
+                R value = loaded.get(id);
+                if (value == null) {
+                    stringConnection.setEx(keyPrefix + id, TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL), "");
+                } else {
+                    stringConnection.setEx(keyPrefix + id, timeUnit.toSeconds(time), JSONUtil.toJsonStr(value));
+                }
+            }
+            return null;
+        });
+        loaded.forEach((id, value) -> {
+            putLocal(keyPrefix + id, value);
+            result.put(id, value);
+        });
+        return result;
+    }
+
+
     // 方法2：将任意Java对象序列化为json并存储在string类型的key中，并且可以设置逻辑过期时间，用于处理缓
     //存击穿问题
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit timeUnit) {
+        setWithLogicalExpire(key, value, time, timeUnit, 0L);
+    }
+
+    //delta为本次重建耗时（毫秒），用于概率提前刷新
+    private void setWithLogicalExpire(String key, Object value, Long time, TimeUnit timeUnit, long delta) {
         RedisData redisData = new RedisData();
-        redisData.setData(JSONUtil.toJsonStr(value));
+        redisData.setData(value);
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(time)));
+        redisData.setDelta(delta);
         stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
     }
 
@@ -52,16 +277,26 @@ public class CacheClient {
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit timeUnit) {
 
         String key = keyPrefix + id;
+        //0.先查本地缓存
+        R local = getLocal(key, type);
+        if (local != null) {
+            return local;
+        }
         String json = stringRedisTemplate.opsForValue().get(key);
         //1.判断redis中是否存在
         if (StrUtil.isNotBlank(json)) {
-            //2.如果存在，直接返回
-            return JSONUtil.toBean(json, type);
+            //2.如果存在，放入本地缓存后返回
+            redisHitCount.increment();
+            R r = JSONUtil.toBean(json, type);
+            putLocal(key, r);
+            return r;
         }
-        //3.如果得到null，返回
-        if (json == null) {
+        //3.如果命中的是空值，返回
+        if (json != null) {
+            redisHitCount.increment();
             return null;
         }
+        redisMissCount.increment();
         //4.如果不存在，就去数据库中寻找
         R value = dbFallback.apply(id);
         //5.如果数据库不存在，就将空key放进redis
@@ -69,13 +304,15 @@ public class CacheClient {
             stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
             return null;
         }
-        //6.如果数据库存在，就set进redis中，返回
+        //6.如果数据库存在，就set进redis和本地缓存中，返回
         this.set(key, value, time, timeUnit);
+        putLocal(key, value);
         return value;
     }
 
 
     //方法4：根据指定的key查询缓存，并反序列化为指定类型，需要利用逻辑过期解决缓存击穿问题
+    //过期前按 XFetch 算法概率性提前重建，重建任务进入有界队列，同一个key同时只有一个重建任务
     public <R, ID> R queryWithLogicalExpire(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit timeUnit
     ) {
@@ -86,81 +323,181 @@ public class CacheClient {
         if (StrUtil.isBlank(json)) {
             return null;
         }
-        //3.如果存在，就将json数据转成对象，设置好数据和逻辑过期时间
+        //3.如果存在，就将json数据转成对象，取出数据和逻辑过期时间
         RedisData redisData = JSONUtil.toBean(json, RedisData.class);
         R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        //4.如果没过期，就直接返回对象
-        if (LocalDateTime.now().isAfter(expireTime)) {
+        long expireAt = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long delta = redisData.getDelta() == null ? 0L : redisData.getDelta();
+        long now = System.currentTimeMillis();
+        //4.XFetch：now - delta * beta * ln(rand) >= expireAt 时重建，越接近过期、重建越慢，越可能提前重建
+        double gap = -delta * xfetchBeta * Math.log(ThreadLocalRandom.current().nextDouble(Double.MIN_VALUE, 1D));
+        if (now + gap < expireAt) {
+            //4.1没过期，直接返回
             return r;
         }
-        //5.如果过期了就尝试缓存重建
-        //6.缓存重建
-        //6.1获取锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        //6.2如果获取成功，就开辟新线程
-        if (isLock) {
-            CACHE_REBUILD_EXECUTOR.submit(
-                    () -> {
-                        //6.3然后访问数据库，获得新的信息
-                        R newR = dbFallback.apply(id);
-                        //6.4更新redis中的缓存
-                        this.set(key, newR, time, timeUnit);
-                        //6.5释放锁
-                        unLuck(lockKey);
-                    });
+        if (now >= expireAt) {
+            staleServedCount.increment();
+        } else {
+            earlyRefreshCount.increment();
         }
-        //7.提交过期信息
+        //5.提交重建任务，返回旧数据
+        submitRebuild(key, id, dbFallback, time, timeUnit);
         return r;
     }
 
+    //提交逻辑过期的重建任务：本地按key去重，队列满则放弃，分布式锁在重建线程中获取并保证释放
+    private <R, ID> void submitRebuild(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit timeUnit) {
+        if (!rebuildingKeys.add(key)) {
+            return;
+        }
+        try {
+            CACHE_REBUILD_EXECUTOR.execute(() -> {
+                String lockKey = LOCK_SHOP_KEY + id;
+                String token = UUID.randomUUID().toString();
+                try {
+                    //6.1获取锁，其他节点正在重建就放弃
+                    if (!tryLock(lockKey, token)) {
+                        return;
+                    }
+                    try {
+                        //6.2访问数据库，更新redis中的缓存，并记录重建耗时
+                        long begin = System.currentTimeMillis();
+                        R newR = dbFallback.apply(id);
+                        long cost = System.currentTimeMillis() - begin;
+                        this.setWithLogicalExpire(key, newR, time, timeUnit, cost);
+                        rebuildCount.increment();
+                        rebuildTotalMillis.add(cost);
+                        rebuildMaxMillis.accumulate(cost);
+                    } finally {
+                        //6.3释放锁
+                        unLuck(lockKey, token);
+                    }
+                } catch (Exception e) {
+                    rebuildFailureCount.increment();
+                    log.error("缓存重建失败, key={}", key, e);
+                } finally {
+                    rebuildingKeys.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rebuildingKeys.remove(key);
+            rebuildRejectedCount.increment();
+        }
+    }
+
     //方法5：根据指定的key查询缓存，并反序列化为指定类型，需要利用上锁等待线程的方法解决缓存击穿问题
+    //本JVM内同一个key的并发未命中合并为一次加载（single-flight），跨节点再用分布式互斥锁保护数据库
     public <R, ID> R queryWithMutex(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit timeUnit
     ) throws InterruptedException {
         String key = keyPrefix + id;
-        //1.获取redis中的缓存获得
+        //1.先查本地缓存，再查redis
+        R local = getLocal(key, type);
+        if (local != null) {
+            return local;
+        }
         String json = stringRedisTemplate.opsForValue().get(key);
-        R r = JSONUtil.toBean(json, type);
         //2.获得的json看看是否命中，如果命中直接返回
         if (StrUtil.isNotBlank(json)) {
+            redisHitCount.increment();
+            R r = JSONUtil.toBean(json, type);
+            putLocal(key, r);
             return r;
         }
-        //3.如果命中后但无值，看看获得的值是否是null
-        if (json == null) {
+        //3.如果命中的是空值，返回null
+        if (json != null) {
+            redisHitCount.increment();
             return null;
         }
-        //4.如果没命中，就要去数据库中寻找，这是就要开启一个锁
-        R value = dbFallback.apply(id);
-        boolean isLock = tryLock(LOCK_SHOP_KEY + id);
-        if (!isLock) {
-            Thread.sleep(50);
-            return queryWithMutex(keyPrefix, id, type, dbFallback, time, timeUnit);
+        redisMissCount.increment();
+        //4.没命中，同一个key只让一个线程去加载，其余线程等待它的结果
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return awaitFlight(existing, key, id, type, dbFallback);
         }
-        //5.从数据库中获得的数据后，如果有值，就将缓存写入redis中
-        if (value == null) {
-            //6.如果没有值，就将null也写入redis中，然后返回null
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            return null;
+        try {
+            R value = loadWithMutex(key, id, type, dbFallback, time, timeUnit);
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            //任何异常（包括被中断）都要结束这次加载，否则等待的线程会一直等到超时
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
         }
-        set(key, value, time, timeUnit);
-        //7.释放锁
-        unLuck(LOCK_SHOP_KEY + id);
-        //8.返回
-        return r;
     }
 
+    //等待同一个key正在进行的加载。加载线程最多等锁 mutexWait 后还要查库，所以这里等它两倍时间；
+    //仍然超时或者加载线程被中断时，自己查库兜底，不写缓存
+    private <R, ID> R awaitFlight(
+            CompletableFuture<Object> flight, String key, ID id, Class<R> type, Function<ID, R> dbFallback
+    ) throws InterruptedException {
+        try {
+            return type.cast(flight.get(mutexWait.toMillis() * 2, TimeUnit.MILLISECONDS));
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof InterruptedException)) {
+                throw new RuntimeException("缓存加载失败, key=" + key, e.getCause());
+            }
+            log.warn("缓存加载线程被中断，直接查询数据库, key={}", key);
+        } catch (TimeoutException e) {
+            log.warn("等待缓存加载超时，直接查询数据库, key={}", key);
+        }
+        return dbFallback.apply(id);
+    }
 
-    //上锁方法
-    private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
+    //持有分布式锁去加载数据库并写缓存，拿不到锁就等待其他节点写好缓存，超时后直接查库兜底
+    private <R, ID> R loadWithMutex(
+            String key, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit timeUnit
+    ) throws InterruptedException {
+        String lockKey = LOCK_SHOP_KEY + id;
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + mutexWait.toMillis();
+        while (System.currentTimeMillis() < deadline) {
+            if (tryLock(lockKey, token)) {
+                try {
+                    //拿到锁后再查一次，其他节点可能已经重建好了
+                    String json = stringRedisTemplate.opsForValue().get(key);
+                    if (json != null) {
+                        return StrUtil.isBlank(json) ? null : JSONUtil.toBean(json, type);
+                    }
+                    //5.查数据库，有值写入缓存，没值写入空值
+                    R value = dbFallback.apply(id);
+                    if (value == null) {
+                        stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                        return null;
+                    }
+                    set(key, value, time, timeUnit);
+                    putLocal(key, value);
+                    return value;
+                } finally {
+                    //6.释放锁
+                    unLuck(lockKey, token);
+                }
+            }
+            //锁被其他节点持有，稍等后看缓存是否已经写好
+            Thread.sleep(50);
+            String json = stringRedisTemplate.opsForValue().get(key);
+            if (json != null) {
+                return StrUtil.isBlank(json) ? null : JSONUtil.toBean(json, type);
+            }
+        }
+        //7.等待超时，直接查库返回，不写缓存
+        log.warn("等待缓存重建超时，直接查询数据库, key={}", key);
+        return dbFallback.apply(id);
+    }
+
+
+    //上锁方法，token是本次加锁的唯一标识
+    private boolean tryLock(String key, String token) {
+        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, token, LOCK_SHOP_TTL, TimeUnit.SECONDS);
         return BooleanUtil.isTrue(flag);
     }
 
-    //解锁方法
-    private void unLuck(String key) {
-        stringRedisTemplate.delete(key);
+    //解锁方法，只删除自己加的锁
+    private void unLuck(String key, String token) {
+        stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key), token);
     }
 
 
@@ -0,0 +1,188 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IVoucherOrderService;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 启动时缓存预热：分页读取MySQL，用pipeline批量写入Redis（商铺缓存、商铺GEO索引、秒杀时间窗口、秒杀库存、已下单用户）
+ * <p>
+ * 以 ApplicationRunner 的形式同步执行，预热完成之前应用不会进入 ready 状态（ReadinessState.ACCEPTING_TRAFFIC）；
+ * 此时Web服务器已经在接收请求，由 {@link WarmupInterceptor} 在 {@link #isReady()} 之前返回 503。
+ * </p>
+ */
+@Slf4j
+@Component
+public class CacheWarmer implements ApplicationRunner {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Value("${hmdp.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.warmup.page-size:500}")
+    private int pageSize;
+
+    private volatile boolean ready = false;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            ready = true;
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        warmShops();
+        warmSeckillVouchers();
+        warmSeckillOrders();
+        ready = true;
+        log.info("缓存预热完成，耗时{}ms", System.currentTimeMillis() - begin);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 商铺缓存 cache:shop:{id}，TTL加随机值避免同时过期；同时建立GEO索引
+     */
+    private void warmShops() {
+        long total = shopService.count();
+        long done = 0;
+        long lastId = 0;
+        while (true) {
+            List<Shop> shops = shopService.lambdaQuery()
+                    .gt(Shop::getId, lastId)
+                    .orderByAsc(Shop::getId)
+                    .last("LIMIT " + pageSize)
+                    .list();
+            if (shops.isEmpty()) {
+                break;
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (Shop shop : shops) {
+                    long ttl = CACHE_SHOP_TTL + RandomUtil.randomLong(0, CACHE_SHOP_TTL / 3 + 1);
+                    stringConnection.set(CACHE_SHOP_KEY + shop.getId(), JSONUtil.toJsonStr(shop),
+                            Expiration.from(ttl, TimeUnit.MINUTES), RedisStringCommands.SetOption.upsert());
+                    // 按类型建立GEO索引 shop:geo:{typeId}
+                    if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                        stringConnection.geoAdd(SHOP_GEO_KEY + shop.getTypeId(),
+                                new Point(shop.getX(), shop.getY()), shop.getId().toString());
+                    }
+                }
+                return null;
+            });
+            done += shops.size();
+            lastId = shops.get(shops.size() - 1).getId();
+            log.info("预热商铺缓存 {}/{}", done, total);
+        }
+    }
+
+    /**
+     * 秒杀时间窗口 seckill:window:{voucherId}，与数据库一致，直接覆盖
+     * 秒杀库存 seckill:stock:{voucherId}
+     * 只在key不存在时写入：Redis中的库存领先于数据库（订单是异步落库的），已有的值不能被覆盖
+     */
+    private void warmSeckillVouchers() {
+        Map<Object, Object> shards = stringRedisTemplate.opsForHash().entries(SECKILL_SHARDS_KEY);
+        long total = seckillVoucherService.count();
+        long done = 0;
+        long lastId = 0;
+        while (true) {
+            List<SeckillVoucher> vouchers = seckillVoucherService.lambdaQuery()
+                    .gt(SeckillVoucher::getVoucherId, lastId)
+                    .orderByAsc(SeckillVoucher::getVoucherId)
+                    .last("LIMIT " + pageSize)
+                    .list();
+            if (vouchers.isEmpty()) {
+                break;
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (SeckillVoucher voucher : vouchers) {
+                    stringConnection.hMSet(SECKILL_WINDOW_KEY + voucher.getVoucherId(),
+                            SeckillWindowCache.toHash(voucher));
+                    if (shards.containsKey(voucher.getVoucherId().toString())) {
+                        // 分片库存在创建券时已经写入各分片
+                        continue;
+                    }
+                    stringConnection.setNX(SECKILL_STOCK_KEY + voucher.getVoucherId(), voucher.getStock().toString());
+                }
+                return null;
+            });
+            done += vouchers.size();
+            lastId = vouchers.get(vouchers.size() - 1).getVoucherId();
+            log.info("预热秒杀库存 {}/{}", done, total);
+        }
+    }
+
+    /**
+     * 已下单用户集合 seckill:order:{voucherId}，SADD 幂等，可以重复执行；分片券写入用户所属分片的集合
+     */
+    private void warmSeckillOrders() {
+        Map<Object, Object> shards = stringRedisTemplate.opsForHash().entries(SECKILL_SHARDS_KEY);
+        long total = voucherOrderService.count();
+        long done = 0;
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            List<VoucherOrder> orders = voucherOrderService.lambdaQuery()
+                    .select(VoucherOrder::getId, VoucherOrder::getUserId, VoucherOrder::getVoucherId)
+                    .gt(VoucherOrder::getId, lastId)
+                    .orderByAsc(VoucherOrder::getId)
+                    .last("LIMIT " + pageSize)
+                    .list();
+            if (orders.isEmpty()) {
+                break;
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (VoucherOrder order : orders) {
+                    Object shardCount = shards.get(order.getVoucherId().toString());
+                    String key = shardCount == null
+                            ? SECKILL_ORDER_KEY + order.getVoucherId()
+                            : StockShardManager.orderKey(order.getVoucherId(),
+                            StockShardManager.homeShard(order.getUserId(), Integer.parseInt(shardCount.toString())));
+                    stringConnection.sAdd(key, order.getUserId().toString());
+                }
+                return null;
+            });
+            done += orders.size();
+            lastId = orders.get(orders.size() - 1).getId();
+            log.info("预热秒杀订单 {}/{}", done, total);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 登录会话存储
+ */
+public interface ISessionStore {
+
+    /**
+     * 创建会话
+     * @param user 用户信息
+     * @return 登录凭证
+     */
+    String create(UserDTO user);
+
+    /**
+     * 批量创建会话
+     * @param users 用户信息
+     * @return 登录凭证，与 users 一一对应
+     */
+    default List<String> createAll(List<UserDTO> users) {
+        List<String> tokens = new ArrayList<>(users.size());
+        for (UserDTO user : users) {
+            tokens.add(create(user));
+        }
+        return tokens;
+    }
+
+    /**
+     * 读取会话，必要时顺带续期
+     * @param token 登录凭证
+     * @return 用户信息，会话不存在返回null
+     */
+    UserDTO get(String token);
+
+    /**
+     * 删除会话
+     * @param token 登录凭证
+     */
+    void remove(String token);
+}
@@ -0,0 +1,159 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的 n-gram 倒排索引，用于短文本（商铺名称）的包含查询
+ * <p>
+ * 每个文本按单字和相邻两字切分建立倒排表，中文不需要分词；查询时取查询串的二元组求交集，
+ * 再用原文校验去掉误命中，结果按 完全匹配 > 前缀匹配 > 命中位置靠前 > 文本较短 > id 排序。
+ * 写操作加锁串行执行，读操作无锁。
+ * </p>
+ */
+public class NGramIndex {
+
+    /**
+     * token -> 包含该token的文档id
+     */
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    /**
+     * 文档id -> 归一化后的文本
+     */
+    private final Map<Long, String> docs = new ConcurrentHashMap<>();
+
+    /**
+     * 新增或更新一条文档
+     */
+    public synchronized void put(long id, String text) {
+        String normalized = normalize(text);
+        String old = docs.put(id, normalized);
+        if (normalized.equals(old)) {
+            return;
+        }
+        if (old != null) {
+            removePostings(id, old);
+        }
+        for (String token : indexTokens(normalized)) {
+            postings.computeIfAbsent(token, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    public synchronized void remove(long id) {
+        String old = docs.remove(id);
+        if (old != null) {
+            removePostings(id, old);
+        }
+    }
+
+    private void removePostings(long id, String text) {
+        for (String token : indexTokens(text)) {
+            Set<Long> ids = postings.get(token);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+    }
+
+    /**
+     * 查询包含 query 的全部文档id，已按相关度排序
+     */
+    public List<Long> search(String query) {
+        String q = normalize(query);
+        if (q.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 1.取每个token的倒排表，从最短的开始求交集
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String token : queryTokens(q)) {
+            Set<Long> ids = postings.get(token);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        List<Long> candidates = new ArrayList<>();
+        outer:
+        for (Long id : lists.get(0)) {
+            for (int i = 1; i < lists.size(); i++) {
+                if (!lists.get(i).contains(id)) {
+                    continue outer;
+                }
+            }
+            candidates.add(id);
+        }
+        // 2.二元组都命中不代表连续出现，用原文校验
+        List<Long> result = new ArrayList<>(candidates.size());
+        for (Long id : candidates) {
+            String text = docs.get(id);
+            if (text != null && text.contains(q)) {
+                result.add(id);
+            }
+        }
+        // 3.排序
+        result.sort(Comparator.<Long>comparingInt(id -> rank(docs.getOrDefault(id, ""), q))
+                .thenComparingInt(id -> docs.getOrDefault(id, "").length())
+                .thenComparing(Comparator.naturalOrder()));
+        return result;
+    }
+
+    /**
+     * 完全匹配为 -1，否则为命中位置（前缀匹配为 0）
+     */
+    private static int rank(String text, String q) {
+        if (text.equals(q)) {
+            return -1;
+        }
+        int index = text.indexOf(q);
+        return index < 0 ? Integer.MAX_VALUE : index;
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : StrUtil.cleanBlank(text).toLowerCase();
+    }
+
+    /**
+     * 建索引用：全部单字和二元组
+     */
+    private static Set<String> indexTokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            tokens.add(text.substring(i, i + 1));
+            if (i + 1 < text.length()) {
+                tokens.add(text.substring(i, i + 2));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 查询用：单字查询用单字，否则用全部二元组
+     */
+    private static Set<String> queryTokens(String q) {
+        if (q.length() == 1) {
+            return Collections.singleton(q);
+        }
+        Set<String> tokens = new LinkedHashSet<>();
+        for (int i = 0; i + 1 < q.length(); i++) {
+            tokens.add(q.substring(i, i + 2));
+        }
+        return tokens;
+    }
+}
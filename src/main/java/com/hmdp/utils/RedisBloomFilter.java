@@ -0,0 +1,183 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 布隆过滤器：位数组保存在Redis的bitmap中，本地保留一份镜像
+ * <p>
+ * 判断时只读本地镜像，不访问Redis；新增时同时写本地镜像和Redis，
+ * 其他节点通过 {@link #mergeFromRedis()} 定时合并Redis中的位。
+ * </p>
+ */
+public class RedisBloomFilter {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String key;
+    private final long numBits;
+    private final int numHashFunctions;
+
+    private volatile AtomicLongArray bits;
+
+    /**
+     * @param key                Redis bitmap 的key
+     * @param expectedInsertions 预计元素数量
+     * @param fpp                期望误判率
+     */
+    public RedisBloomFilter(StringRedisTemplate stringRedisTemplate, String key, long expectedInsertions, double fpp) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.key = key;
+        this.numBits = optimalNumBits(expectedInsertions, fpp);
+        this.numHashFunctions = optimalNumHashFunctions(expectedInsertions, numBits);
+        this.bits = newBits();
+    }
+
+    /**
+     * m = -n * ln(p) / (ln2)^2
+     */
+    private static long optimalNumBits(long n, double p) {
+        return (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+    }
+
+    /**
+     * k = m / n * ln2
+     */
+    private static int optimalNumHashFunctions(long n, long m) {
+        return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    private AtomicLongArray newBits() {
+        return new AtomicLongArray((int) ((numBits + 63) >>> 6));
+    }
+
+    /**
+     * 双重哈希计算 k 个位下标：h1 + i * h2
+     */
+    private long[] offsets(String value) {
+        long[] hash = MurmurHash.hash128(value.getBytes(StandardCharsets.UTF_8));
+        long[] offsets = new long[numHashFunctions];
+        long combined = hash[0];
+        for (int i = 0; i < numHashFunctions; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+
+    private static void setBit(AtomicLongArray bits, long offset) {
+        int index = (int) (offset >>> 6);
+        long mask = 1L << (offset & 63);
+        long old;
+        do {
+            old = bits.get(index);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(index, old, old | mask));
+    }
+
+    private static boolean getBit(AtomicLongArray bits, long offset) {
+        return (bits.get((int) (offset >>> 6)) & (1L << (offset & 63))) != 0;
+    }
+
+    public boolean mightContain(String value) {
+        AtomicLongArray current = bits;
+        for (long offset : offsets(value)) {
+            if (!getBit(current, offset)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 只写本地镜像，用于接收其他节点的新增广播
+     */
+    public void addLocal(String value) {
+        for (long offset : offsets(value)) {
+            setBit(bits, offset);
+        }
+    }
+
+    /**
+     * 写本地镜像，并用一次pipeline把 k 个 SETBIT 写入Redis
+     */
+    public void add(String value) {
+        long[] offsets = offsets(value);
+        for (long offset : offsets) {
+            setBit(bits, offset);
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (long offset : offsets) {
+                stringConnection.setBit(key, offset, true);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 用给定的元素全量重建：先在本地算好位数组，再一次性写入临时key并RENAME，最后替换本地镜像
+     */
+    public void rebuild(Collection<String> values) {
+        AtomicLongArray rebuilt = newBits();
+        for (String value : values) {
+            for (long offset : offsets(value)) {
+                setBit(rebuilt, offset);
+            }
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] tmpKeyBytes = (key + ":tmp").getBytes(StandardCharsets.UTF_8);
+        byte[] bitmap = toRedisBitmap(rebuilt);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.stringCommands().set(tmpKeyBytes, bitmap);
+            connection.keyCommands().rename(tmpKeyBytes, keyBytes);
+            return null;
+        });
+        bits = rebuilt;
+    }
+
+    /**
+     * 读取Redis中的bitmap并合并到本地镜像（只增不减，不会产生误判为不存在）
+     */
+    public void mergeFromRedis() {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] bitmap = stringRedisTemplate.execute(
+                (RedisCallback<byte[]>) connection -> connection.stringCommands().get(keyBytes));
+        if (bitmap == null) {
+            return;
+        }
+        AtomicLongArray current = bits;
+        long limit = Math.min(numBits, (long) bitmap.length << 3);
+        for (long offset = 0; offset < limit; offset++) {
+            // Redis bitmap 中下标 0 是第一个字节的最高位
+            if ((bitmap[(int) (offset >>> 3)] & (0x80 >>> (offset & 7))) != 0) {
+                setBit(current, offset);
+            }
+        }
+    }
+
+    private byte[] toRedisBitmap(AtomicLongArray bits) {
+        byte[] bitmap = new byte[(int) ((numBits + 7) >>> 3)];
+        for (long offset = 0; offset < numBits; offset++) {
+            if (getBit(bits, offset)) {
+                bitmap[(int) (offset >>> 3)] |= (byte) (0x80 >>> (offset & 7));
+            }
+        }
+        return bitmap;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashFunctions() {
+        return numHashFunctions;
+    }
+}
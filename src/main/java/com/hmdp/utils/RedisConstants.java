@@ -5,22 +5,56 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
+    public static final String LOGIN_REVOKED_CHANNEL = "login:revoked:channel";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String SHOP_BLOOM_KEY = "bloom:shop";
+    public static final String SHOP_BLOOM_CHANNEL = "bloom:shop:add";
+    public static final String SHOP_INDEX_CHANNEL = "shop:index:update";
 
     public static final String TYPE_SHOP_KEY = "type:shop:";
 
+    public static final String CACHE_USER_PROFILE_KEY = "cache:user:profile:";
+    public static final Long CACHE_USER_PROFILE_TTL = 30L;
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards";
+    public static final String SECKILL_WINDOW_KEY = "seckill:window:";
+    public static final String SECKILL_LIMIT_KEY = "seckill:limit:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
+    public static final String SECKILL_PENDING_KEY = "seckill:pending:";
+    public static final String SECKILL_TRANSIT_KEY = "seckill:transit:";
+    public static final String SECKILL_APPLIED_KEY = "seckill:applied:";
+    public static final String SECKILL_REBALANCE_GEN_KEY = "seckill:rebalance:gen";
+    public static final String LOCK_SECKILL_REBALANCE_KEY = "lock:seckill:rebalance";
+    public static final String LOCK_SECKILL_RELAY_KEY = "lock:seckill:relay";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKED_DELTA_KEY = "blog:liked:delta";
+    public static final String BLOG_LIKED_FLUSHING_KEY = "blog:liked:delta:flushing";
+    public static final String LOCK_BLOG_LIKED_FLUSH_KEY = "lock:blog:liked:flush";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String BLOG_HOT_LIKED_KEY = "blog:hot:liked";
+    public static final String LOCK_BLOG_HOT_KEY = "lock:blog:hot";
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_OUTBOX_KEY = "feed:outbox:";
+    public static final String FEED_BIG_AUTHORS_KEY = "feed:big";
+    public static final String FOLLOWS_KEY = "follows:";
+    public static final Long FOLLOWS_TTL = 7L;
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
+    public static final String UV_KEY = "uv:";
+    public static final String LOCK_SIGN_ARCHIVE_KEY = "lock:sign:archive";
     public static final String SECKILL_VOUCHER_ORDER = "seckill:voucher:order:";
     public static final String LOCK_ORDER_KEY = "lock:order:";
+    public static final String SNOWFLAKE_WORKER_KEY = "snowflake:worker:";
+    public static final Long SNOWFLAKE_WORKER_TTL = 60L;
 }
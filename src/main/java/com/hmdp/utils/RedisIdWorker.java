@@ -1,35 +1,171 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Component;
 
-import javax.swing.text.DateFormatter;
-import java.text.DateFormat;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 全局ID生成器：时间戳(31位) << 32 | 当天序列号(32位)
+ * <p>
+ * 号段模式下，每个节点通过 INCRBY 一次租用 step 个序列号，在本地用 AtomicLong 发号，
+ * 剩余量低于水位线时在后台预取下一个号段，绝大多数 nextId 调用不访问Redis。
+ * </p>
+ */
+@Slf4j
 @Component
 public class RedisIdWorker {
 
     private static final int COUNT_BITS = 32;
-    private StringRedisTemplate stringRedisTemplate;
+    private static final long BEGIN_TIMESTAMP = 1640995200L;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yy:MM:dd");
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 是否开启号段模式，关闭时每次都 INCR
+     */
+    @Value("${hmdp.id.segment-enabled:true}")
+    private boolean segmentEnabled;
+
+    /**
+     * 每次租用的号段长度
+     */
+    @Value("${hmdp.id.segment-step:1000}")
+    private long step;
+
+    /**
+     * 当前号段剩余比例低于该值时预取下一个号段
+     */
+    @Value("${hmdp.id.segment-watermark:0.2}")
+    private double watermark;
+
+    /**
+     * keyPrefix -> 当天的号段缓冲
+     */
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    private static final ExecutorService SEGMENT_PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
     }
-    private static final long BEGIN_TIMESTAMP = 1640995200L;
-    public long nextId(String keyPrefix) {
 
+    public long nextId(String keyPrefix) {
         //1.生成时间戳，就是将当前时间的秒-开始时间戳
         LocalDateTime now = LocalDateTime.now();
         long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
         //2.1生成当天日期前缀
-        String date = now.format(DateTimeFormatter.ofPattern("yy:mm:dd"));
-        //2.2使用自增长
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        String date = now.format(DATE_FORMATTER);
+        String key = "icr:" + keyPrefix + ":" + date;
+        //2.2使用自增长（号段模式下从本地号段取）
+        long count = segmentEnabled ? bufferOf(keyPrefix, key).nextCount() : increment(key, 1);
         // 3.拼接并返回
         return timestamp << COUNT_BITS | count;
     }
+
+    /**
+     * 获取当天的号段缓冲，日期变化时替换为新key的缓冲
+     */
+    private SegmentBuffer bufferOf(String keyPrefix, String key) {
+        SegmentBuffer buffer = buffers.get(keyPrefix);
+        if (buffer != null && buffer.key.equals(key)) {
+            return buffer;
+        }
+        return buffers.compute(keyPrefix, (k, old) -> old != null && old.key.equals(key) ? old : new SegmentBuffer(key));
+    }
+
+    private long increment(String key, long delta) {
+        Long value = stringRedisTemplate.opsForValue().increment(key, delta);
+        if (value == null) {
+            throw new IllegalStateException("生成ID失败, key=" + key);
+        }
+        return value;
+    }
+
+    /**
+     * 一个号段 [start, max]
+     */
+    private static class Segment {
+        private final AtomicLong cursor;
+        private final long max;
+
+        private Segment(long start, long max) {
+            this.cursor = new AtomicLong(start);
+            this.max = max;
+        }
+    }
+
+    /**
+     * 双号段缓冲：current 用于发号，next 为后台预取的号段
+     */
+    private class SegmentBuffer {
+        private final String key;
+        private volatile Segment current;
+        private volatile Segment next;
+        private final AtomicBoolean loading = new AtomicBoolean(false);
+
+        private SegmentBuffer(String key) {
+            this.key = key;
+            this.current = lease();
+        }
+
+        private Segment lease() {
+            long end = increment(key, step);
+            return new Segment(end - step + 1, end);
+        }
+
+        private long nextCount() {
+            while (true) {
+                Segment segment = current;
+                long value = segment.cursor.getAndIncrement();
+                if (value <= segment.max) {
+                    if (segment.max - value < step * watermark && next == null) {
+                        prefetch();
+                    }
+                    return value;
+                }
+                // 当前号段用完，切换到预取好的号段；预取还没完成则同步租用
+                synchronized (this) {
+                    if (current == segment) {
+                        Segment prefetched = next;
+                        next = null;
+                        current = prefetched != null ? prefetched : lease();
+                    }
+                }
+            }
+        }
+
+        private void prefetch() {
+            if (!loading.compareAndSet(false, true)) {
+                return;
+            }
+            SEGMENT_PREFETCH_EXECUTOR.submit(() -> {
+                try {
+                    if (next == null) {
+                        next = lease();
+                    }
+                } catch (Exception e) {
+                    log.error("预取号段失败, key={}", key, e);
+                } finally {
+                    loading.set(false);
+                }
+            });
+        }
+    }
 }
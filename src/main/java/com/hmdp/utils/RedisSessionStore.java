@@ -0,0 +1,152 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.hmdp.dto.UserDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_CODE_TTL;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+
+/**
+ * 基于Redis Hash的会话存储
+ * <p>
+ * 读取时用一个Lua脚本完成 HGETALL + 按需续期，只有剩余有效期低于阈值时才 EXPIRE；
+ * 解码后的 UserDTO 在本地短暂缓存，同一个token的连续请求不再访问Redis。
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(prefix = "hmdp.session", name = "mode", havingValue = "redis", matchIfMissing = true)
+public class RedisSessionStore implements ISessionStore {
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_NICK_NAME = "nickName";
+    private static final String FIELD_ICON = "icon";
+
+    private static final DefaultRedisScript<List<Object>> SESSION_GET_SCRIPT;
+
+    static {
+        // 脚本返回 HGETALL 的扁平列表，List.class 没法直接带泛型参数
+        @SuppressWarnings("unchecked")
+        Class<List<Object>> resultType = (Class<List<Object>>) (Class<?>) List.class;
+        SESSION_GET_SCRIPT = new DefaultRedisScript<>();
+        SESSION_GET_SCRIPT.setLocation(new ClassPathResource("lua/session-get.lua"));
+        SESSION_GET_SCRIPT.setResultType(resultType);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 会话有效期（秒）
+     */
+    private final long ttlSeconds = TimeUnit.MINUTES.toSeconds(LOGIN_CODE_TTL);
+
+    /**
+     * 剩余有效期低于 ttl * refreshRatio 时才续期
+     */
+    @Value("${hmdp.session.refresh-ratio:0.5}")
+    private double refreshRatio;
+
+    private final LRUCache<String, UserDTO> localCache;
+
+    public RedisSessionStore(StringRedisTemplate stringRedisTemplate,
+                             @Value("${hmdp.session.local-capacity:10000}") int localCapacity,
+                             @Value("${hmdp.session.local-ttl:2s}") Duration localTtl) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.localCache = CacheUtil.newLRUCache(localCapacity, localTtl.toMillis());
+    }
+
+    @Override
+    public String create(UserDTO user) {
+        return createAll(Collections.singletonList(user)).get(0);
+    }
+
+    @Override
+    public List<String> createAll(List<UserDTO> users) {
+        List<String> tokens = new ArrayList<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            tokens.add(UUID.randomUUID().toString());
+        }
+        // 所有 HSET + EXPIRE 放在一个pipeline里，一次往返
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (int i = 0; i < users.size(); i++) {
+                String key = LOGIN_USER_KEY + tokens.get(i);
+                stringConnection.hMSet(key, toMap(users.get(i)));
+                stringConnection.expire(key, ttlSeconds);
+            }
+            return null;
+        });
+        return tokens;
+    }
+
+    private static Map<String, String> toMap(UserDTO user) {
+        Map<String, String> userMap = new HashMap<>(4);
+        userMap.put(FIELD_ID, user.getId().toString());
+        if (user.getNickName() != null) {
+            userMap.put(FIELD_NICK_NAME, user.getNickName());
+        }
+        if (user.getIcon() != null) {
+            userMap.put(FIELD_ICON, user.getIcon());
+        }
+        return userMap;
+    }
+
+    @Override
+    public UserDTO get(String token) {
+        // 1.先查本地缓存
+        UserDTO cached = localCache.get(token, false);
+        if (cached != null) {
+            return cached;
+        }
+        // 2.一次Lua调用读取会话并按需续期
+        List<Object> fields = stringRedisTemplate.execute(
+                SESSION_GET_SCRIPT,
+                Collections.singletonList(LOGIN_USER_KEY + token),
+                String.valueOf(ttlSeconds),
+                String.valueOf((long) (ttlSeconds * refreshRatio)));
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        // 3.手动解码，避免反射
+        UserDTO user = new UserDTO();
+        for (int i = 0; i + 1 < fields.size(); i += 2) {
+            String field = String.valueOf(fields.get(i));
+            String value = String.valueOf(fields.get(i + 1));
+            switch (field) {
+                case FIELD_ID -> user.setId(Long.valueOf(value));
+                case FIELD_NICK_NAME -> user.setNickName(value);
+                case FIELD_ICON -> user.setIcon(value);
+                default -> {
+                }
+            }
+        }
+        if (user.getId() == null) {
+            return null;
+        }
+        localCache.put(token, user);
+        return user;
+    }
+
+    @Override
+    public void remove(String token) {
+        localCache.remove(token);
+        stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+    }
+}
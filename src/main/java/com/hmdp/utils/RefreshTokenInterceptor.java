@@ -1,27 +1,18 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
-import jakarta.annotation.Resource;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.HandlerInterceptor;
 
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
-import static com.hmdp.utils.RedisConstants.LOGIN_CODE_TTL;
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
-
 public class RefreshTokenInterceptor implements HandlerInterceptor {
 
-    private final StringRedisTemplate stringRedisTemplate;
+    private final ISessionStore sessionStore;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    public RefreshTokenInterceptor(ISessionStore sessionStore) {
+        this.sessionStore = sessionStore;
     }
 
     @Override
@@ -32,24 +23,17 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             return true;
         }
 
-        // 2. 获取 Redis 用户信息
-        String key = LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        // 2. 获取会话中的用户信息（会话存储负责按需刷新有效期）
+        UserDTO userDTO = sessionStore.get(token);
 
-        // 3. map 为空则说明未登录
-        if (userMap.isEmpty()) {
+        // 3. 为空则说明未登录
+        if (userDTO == null) {
             return true;
         }
 
-        // 4. 转为 DTO
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
-
-        // 5. 保存到 ThreadLocal
+        // 4. 保存到 ThreadLocal
         UserHolder.saveUser(userDTO);
 
-        // 6. 刷新 token 有效期
-        stringRedisTemplate.expire(key, LOGIN_CODE_TTL, TimeUnit.MINUTES);
-
         return true;
     }
 
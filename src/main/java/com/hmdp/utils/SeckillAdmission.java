@@ -0,0 +1,173 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_LIMIT_KEY;
+
+/**
+ * 秒杀请求准入控制
+ * <p>
+ * 依次经过：用户令牌桶（本地）、券令牌桶（本地，每个节点各自限流）、券令牌桶（Redis，集群总量）、
+ * 并发许可。并发许可用满时最多 queue-capacity 个请求排队等待 queue-timeout，队列满或等待超时立即拒绝。
+ * 被拒绝的请求不占用Redis连接，也不会长时间占住Tomcat线程，其他接口不受秒杀流量影响。
+ * </p>
+ */
+@Slf4j
+@Component
+public class SeckillAdmission {
+
+    private static final DefaultRedisScript<Long> TOKEN_BUCKET_SCRIPT;
+
+    static {
+        TOKEN_BUCKET_SCRIPT = new DefaultRedisScript<>();
+        TOKEN_BUCKET_SCRIPT.setLocation(new ClassPathResource("lua/token-bucket.lua"));
+        TOKEN_BUCKET_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.seckill.admission.user-rate:1}")
+    private double userRate;
+
+    @Value("${hmdp.seckill.admission.user-burst:3}")
+    private double userBurst;
+
+    @Value("${hmdp.seckill.admission.voucher-rate:2000}")
+    private double voucherRate;
+
+    @Value("${hmdp.seckill.admission.voucher-burst:2000}")
+    private double voucherBurst;
+
+    @Value("${hmdp.seckill.admission.cluster-rate:5000}")
+    private long clusterRate;
+
+    @Value("${hmdp.seckill.admission.cluster-burst:5000}")
+    private long clusterBurst;
+
+    @Value("${hmdp.seckill.admission.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Value("${hmdp.seckill.admission.queue-timeout:100ms}")
+    private Duration queueTimeout;
+
+    private final Semaphore permits;
+
+    /**
+     * 用户id -> 令牌桶，一段时间不访问的用户自动淘汰
+     */
+    private final LRUCache<Long, TokenBucket> userBuckets = CacheUtil.newLRUCache(100000, TimeUnit.MINUTES.toMillis(1));
+
+    /**
+     * 券id -> 令牌桶
+     */
+    private final Map<Long, TokenBucket> voucherBuckets = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejectedUser = new AtomicLong();
+    private final AtomicLong rejectedVoucher = new AtomicLong();
+    private final AtomicLong rejectedCluster = new AtomicLong();
+    private final AtomicLong rejectedQueue = new AtomicLong();
+
+    public SeckillAdmission(@Value("${hmdp.seckill.admission.max-concurrent:200}") int maxConcurrent) {
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * 尝试准入，返回true时调用方必须在请求结束后调用 {@link #release()}
+     */
+    public boolean tryAcquire(Long voucherId, Long userId) {
+        // 1.同一个用户的重复点击
+        if (!userBuckets.get(userId, false, () -> new TokenBucket(userRate, userBurst)).tryAcquire()) {
+            rejectedUser.incrementAndGet();
+            return false;
+        }
+        // 2.本节点的券流量
+        if (!voucherBuckets.computeIfAbsent(voucherId, k -> new TokenBucket(voucherRate, voucherBurst)).tryAcquire()) {
+            rejectedVoucher.incrementAndGet();
+            return false;
+        }
+        // 3.集群的券流量
+        if (!tryAcquireCluster(voucherId)) {
+            rejectedCluster.incrementAndGet();
+            return false;
+        }
+        // 4.并发许可，用满时有限排队
+        if (permits.tryAcquire()) {
+            admitted.incrementAndGet();
+            return true;
+        }
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            rejectedQueue.incrementAndGet();
+            return false;
+        }
+        try {
+            if (permits.tryAcquire(queueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                admitted.incrementAndGet();
+                return true;
+            }
+            rejectedQueue.incrementAndGet();
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedQueue.incrementAndGet();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Redis令牌桶，Redis异常时放行（后面的秒杀脚本同样依赖Redis，会给出真正的错误）
+     */
+    private boolean tryAcquireCluster(Long voucherId) {
+        try {
+            Long allowed = stringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT,
+                    Collections.singletonList(SECKILL_LIMIT_KEY + voucherId),
+                    String.valueOf(clusterRate), String.valueOf(clusterBurst));
+            return allowed == null || allowed == 1L;
+        } catch (Exception e) {
+            log.warn("秒杀集群限流失败，放行 voucherId={}", voucherId, e);
+            return true;
+        }
+    }
+
+    /**
+     * 准入统计：累计准入数、各环节累计拒绝数、当前排队数和执行中的请求数
+     */
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("admitted", admitted.get());
+        metrics.put("rejectedUser", rejectedUser.get());
+        metrics.put("rejectedVoucher", rejectedVoucher.get());
+        metrics.put("rejectedCluster", rejectedCluster.get());
+        metrics.put("rejectedQueue", rejectedQueue.get());
+        metrics.put("queued", (long) queued.get());
+        metrics.put("available", (long) permits.availablePermits());
+        return metrics;
+    }
+}
@@ -0,0 +1,86 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * 秒杀接口准入拦截器，放在登录拦截器之后
+ */
+public class SeckillAdmissionInterceptor implements HandlerInterceptor {
+
+    private static final String ADMITTED_ATTRIBUTE = SeckillAdmissionInterceptor.class.getName() + ".admitted";
+
+    private final SeckillAdmission seckillAdmission;
+
+    private final SoldOutRegistry soldOutRegistry;
+
+    private final SeckillWindowCache seckillWindowCache;
+
+    public SeckillAdmissionInterceptor(SeckillAdmission seckillAdmission,
+                                       SoldOutRegistry soldOutRegistry,
+                                       SeckillWindowCache seckillWindowCache) {
+        this.seckillAdmission = seckillAdmission;
+        this.soldOutRegistry = soldOutRegistry;
+        this.seckillWindowCache = seckillWindowCache;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 1.取券id和用户
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        UserDTO user = UserHolder.getUser();
+        if (variables == null || variables.get("id") == null || user == null) {
+            return true;
+        }
+        Long voucherId;
+        try {
+            voucherId = Long.valueOf(variables.get("id"));
+        } catch (NumberFormatException e) {
+            // 交给参数绑定返回 400
+            return true;
+        }
+        // 2.不在秒杀时间内或已售罄的请求会在进程内被拒绝，不访问Redis，不必占用令牌
+        if (isRejectedLocally(voucherId)) {
+            return true;
+        }
+        // 3.准入
+        if (!seckillAdmission.tryAcquire(voucherId, user.getId())) {
+            response.setStatus(429);
+            response.setHeader("Retry-After", "1");
+            response.setContentType("application/json;charset=UTF-8");
+            response.getOutputStream().write(
+                    JSONUtil.toJsonStr(Result.fail("请求过于频繁，请稍后再试")).getBytes(StandardCharsets.UTF_8));
+            return false;
+        }
+        request.setAttribute(ADMITTED_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(ADMITTED_ATTRIBUTE) != null) {
+            seckillAdmission.release();
+        }
+    }
+
+    private boolean isRejectedLocally(Long voucherId) {
+        long[] window = seckillWindowCache.get(voucherId);
+        if (window == null) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if ((window[0] > 0 && now < window[0]) || (window[1] > 0 && now > window[1])) {
+            return true;
+        }
+        return soldOutRegistry.isSoldOut(voucherId);
+    }
+}
@@ -0,0 +1,90 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import jakarta.annotation.Resource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_WINDOW_KEY;
+
+/**
+ * 秒杀券的开放时间窗口 [beginTime, endTime]
+ * <p>
+ * 创建券和启动预热时写入Redis哈希 seckill:window:{voucherId}（begin、end，毫秒时间戳，0 表示不限），
+ * 读取时依次查本地缓存、Redis、数据库。进程内先用本地时间提前拒绝，
+ * 秒杀脚本再用Redis服务器时间做最终判断，各节点时钟不一致也不会放进窗口外的请求。
+ * </p>
+ */
+@Component
+public class SeckillWindowCache {
+
+    private static final String FIELD_BEGIN = "begin";
+    private static final String FIELD_END = "end";
+
+    /**
+     * 不存在的券也缓存，避免反复查库
+     */
+    private static final long[] MISSING = new long[0];
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    private final LRUCache<Long, long[]> localCache = CacheUtil.newLRUCache(10000, TimeUnit.MINUTES.toMillis(1));
+
+    /**
+     * @return {begin, end}，券不存在时返回null
+     */
+    public long[] get(Long voucherId) {
+        // 1.本地缓存
+        long[] window = localCache.get(voucherId, false);
+        if (window == null) {
+            // 2.Redis
+            List<Object> values = stringRedisTemplate.opsForHash()
+                    .multiGet(SECKILL_WINDOW_KEY + voucherId, List.of(FIELD_BEGIN, FIELD_END));
+            if (values.get(0) != null && values.get(1) != null) {
+                window = new long[]{Long.parseLong(values.get(0).toString()), Long.parseLong(values.get(1).toString())};
+            } else {
+                // 3.数据库，查到后写回Redis
+                SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+                window = voucher == null ? MISSING : put(voucher);
+            }
+            localCache.put(voucherId, window);
+        }
+        return window == MISSING ? null : window;
+    }
+
+    /**
+     * 写入Redis和本地缓存
+     */
+    public long[] put(SeckillVoucher voucher) {
+        Map<String, String> hash = toHash(voucher);
+        stringRedisTemplate.opsForHash().putAll(SECKILL_WINDOW_KEY + voucher.getVoucherId(), hash);
+        long[] window = {Long.parseLong(hash.get(FIELD_BEGIN)), Long.parseLong(hash.get(FIELD_END))};
+        localCache.put(voucher.getVoucherId(), window);
+        return window;
+    }
+
+    public static Map<String, String> toHash(SeckillVoucher voucher) {
+        Map<String, String> hash = new HashMap<>(2);
+        hash.put(FIELD_BEGIN, String.valueOf(toMillis(voucher.getBeginTime())));
+        hash.put(FIELD_END, String.valueOf(toMillis(voucher.getEndTime())));
+        return hash;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time == null ? 0 : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,222 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_KEY;
+
+/**
+ * 无状态的签名令牌会话：token = base64url(payload) + "." + base64url(HmacSHA256(payload))
+ * <p>
+ * payload 中包含 UserDTO 的字段、过期时间和令牌编号 jti，校验完全在进程内完成，不访问Redis。
+ * 登出时把 jti 写入Redis的吊销集合（ZSET，score为令牌过期时间），各节点本地镜像吊销集合，
+ * 通过 Pub/Sub 即时同步，并定时全量同步兜底。
+ * </p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "hmdp.session", name = "mode", havingValue = "signed")
+public class SignedTokenSessionStore implements ISessionStore {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * 曾经提交在配置文件中的默认密钥，已经公开，不能使用
+     */
+    private static final String PLACEHOLDER_SECRET = "change-me-please-hmdp-session-secret";
+
+    /**
+     * HmacSHA256 密钥的最小长度（字节）
+     */
+    private static final int MIN_SECRET_BYTES = 32;
+
+    @Value("${hmdp.session.secret:}")
+    private String secret;
+
+    @Value("${hmdp.session.signed-ttl:12h}")
+    private Duration ttl;
+
+    @Value("${hmdp.session.revoked-sync-interval:30s}")
+    private Duration revokedSyncInterval;
+
+    /**
+     * Mac 不是线程安全的，每个线程一个
+     */
+    private ThreadLocal<Mac> macHolder;
+
+    /**
+     * 本地镜像的已吊销令牌，jti -> 令牌过期时间（秒）
+     */
+    private volatile Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService revokedSyncExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    @PostConstruct
+    private void init() {
+        if (StrUtil.isBlank(secret)) {
+            throw new IllegalStateException("hmdp.session.secret 不能为空，请通过环境变量 HMDP_SESSION_SECRET 设置");
+        }
+        if (PLACEHOLDER_SECRET.equals(secret)) {
+            throw new IllegalStateException("hmdp.session.secret 不能使用默认值，请设置随机密钥");
+        }
+        if (secret.getBytes(StandardCharsets.UTF_8).length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("hmdp.session.secret 至少需要 " + MIN_SECRET_BYTES + " 字节");
+        }
+        SecretKeySpec keySpec = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        macHolder = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(keySpec);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // 其他节点登出时即时加入本地镜像，消息格式 jti:exp
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int colon = body.lastIndexOf(':');
+            revoked.put(body.substring(0, colon), Long.valueOf(body.substring(colon + 1)));
+        }, new ChannelTopic(LOGIN_REVOKED_CHANNEL));
+        syncRevoked();
+        revokedSyncExecutor.scheduleWithFixedDelay(this::syncRevoked,
+                revokedSyncInterval.toMillis(), revokedSyncInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        revokedSyncExecutor.shutdownNow();
+    }
+
+    @Override
+    public String create(UserDTO user) {
+        JSONObject payload = new JSONObject();
+        payload.set("id", user.getId());
+        payload.set("nickName", user.getNickName());
+        payload.set("icon", user.getIcon());
+        payload.set("exp", System.currentTimeMillis() / 1000 + ttl.getSeconds());
+        payload.set("jti", RandomUtil.randomString(16));
+        String body = ENCODER.encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8));
+        return body + "." + ENCODER.encodeToString(sign(body));
+    }
+
+    @Override
+    public UserDTO get(String token) {
+        // 1.校验签名
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String body = token.substring(0, dot);
+        byte[] signature;
+        try {
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(sign(body), signature)) {
+            return null;
+        }
+        // 2.校验过期时间和吊销状态
+        JSONObject payload = JSONUtil.parseObj(new String(DECODER.decode(body), StandardCharsets.UTF_8));
+        if (payload.getLong("exp", 0L) < System.currentTimeMillis() / 1000) {
+            return null;
+        }
+        if (revoked.containsKey(payload.getStr("jti"))) {
+            return null;
+        }
+        // 3.还原用户信息
+        UserDTO user = new UserDTO();
+        user.setId(payload.getLong("id"));
+        user.setNickName(payload.getStr("nickName"));
+        user.setIcon(payload.getStr("icon"));
+        return user;
+    }
+
+    @Override
+    public void remove(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0 || get(token) == null) {
+            return;
+        }
+        JSONObject payload = JSONUtil.parseObj(
+                new String(DECODER.decode(token.substring(0, dot)), StandardCharsets.UTF_8));
+        String jti = payload.getStr("jti");
+        Long exp = payload.getLong("exp");
+        // 吊销记录保留到令牌过期为止
+        stringRedisTemplate.opsForZSet().add(LOGIN_REVOKED_KEY, jti, exp);
+        revoked.put(jti, exp);
+        stringRedisTemplate.convertAndSend(LOGIN_REVOKED_CHANNEL, jti + ":" + exp);
+    }
+
+    private byte[] sign(String body) {
+        return macHolder.get().doFinal(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 清理已过期的吊销记录，并用Redis中的吊销集合替换本地镜像
+     */
+    private void syncRevoked() {
+        try {
+            long now = System.currentTimeMillis() / 1000;
+            stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_REVOKED_KEY, 0, now);
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(LOGIN_REVOKED_KEY, now, Double.MAX_VALUE);
+            Map<String, Long> latest = new ConcurrentHashMap<>();
+            if (tuples != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                    if (tuple.getValue() != null && tuple.getScore() != null) {
+                        latest.put(tuple.getValue(), tuple.getScore().longValue());
+                    }
+                }
+            }
+            // 同步期间收到的广播也要保留，已过期的丢弃
+            revoked.forEach((jti, exp) -> {
+                if (exp >= now) {
+                    latest.putIfAbsent(jti, exp);
+                }
+            });
+            revoked = latest;
+        } catch (Exception e) {
+            log.error("同步吊销令牌失败", e);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.hmdp.utils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import static com.hmdp.utils.RedisConstants.SNOWFLAKE_WORKER_KEY;
+import static com.hmdp.utils.RedisConstants.SNOWFLAKE_WORKER_TTL;
+
+/**
+ * 雪花算法ID生成器：0 | 时间戳(41位,毫秒) | 时钟回拨位(1位) | workerId(9位) | 序列号(12位)
+ * <p>
+ * 发号完全在进程内通过CAS完成，workerId 在启动时用 SET NX 从Redis租用并定时续期，保证多实例不冲突。
+ * 时钟小幅回拨时沿用上次的时间戳继续发号，大幅回拨时翻转回拨位，避开回拨前已发出的ID。
+ * 回拨位只有两个取值：再次大幅回拨时，如果翻转后的取值上次使用时发出的时间戳还没有被当前时间越过，
+ * 就拒绝发号（抛出 IllegalStateException），直到时钟越过那段时间。
+ * </p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "hmdp.id", name = "generator", havingValue = "snowflake")
+public class SnowflakeIdWorker {
+
+    private static final long BEGIN_TIMESTAMP = 1640995200000L;
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int WORKER_BITS = 9;
+    private static final int CLOCK_BACK_BITS = 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+
+    private static final int WORKER_SHIFT = SEQUENCE_BITS;
+    private static final int CLOCK_BACK_SHIFT = SEQUENCE_BITS + WORKER_BITS;
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_BITS + CLOCK_BACK_BITS;
+
+    /**
+     * 状态中时间戳的偏移：state = timestamp << STATE_TIMESTAMP_SHIFT | 回拨位 << SEQUENCE_BITS | 序列号
+     */
+    private static final int STATE_TIMESTAMP_SHIFT = SEQUENCE_BITS + CLOCK_BACK_BITS;
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("lua/snowflake-renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("lua/unlock.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 允许沿用旧时间戳的最大回拨毫秒数，超过则翻转回拨位
+     */
+    @Value("${hmdp.id.max-backward-ms:10}")
+    private long maxBackwardMs;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final LongSupplier clock;
+
+    private volatile long workerId = -1;
+
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * 回拨位每个取值最后一次使用时发出的最大时间戳，翻转回拨位时记录，-1 表示还没有用过
+     */
+    private final long[] issuedUntil = {-1, -1};
+
+    private final LongAdder generatedCount = new LongAdder();
+    private final LongAdder sequenceExhaustedCount = new LongAdder();
+    private final LongAdder clockBackwardCount = new LongAdder();
+
+    private final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "snowflake-worker-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public SnowflakeIdWorker(StringRedisTemplate stringRedisTemplate) {
+        this(stringRedisTemplate, System::currentTimeMillis);
+    }
+
+    SnowflakeIdWorker(StringRedisTemplate stringRedisTemplate, LongSupplier clock) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    private void init() {
+        workerId = leaseWorkerId();
+        state.set(currentTimestamp() << STATE_TIMESTAMP_SHIFT);
+        long period = SNOWFLAKE_WORKER_TTL / 3;
+        heartbeatExecutor.scheduleAtFixedRate(this::heartbeat, period, period, TimeUnit.SECONDS);
+        log.info("雪花ID生成器启动, workerId={}", workerId);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        heartbeatExecutor.shutdownNow();
+        stringRedisTemplate.execute(RELEASE_SCRIPT,
+                Collections.singletonList(SNOWFLAKE_WORKER_KEY + workerId), instanceId);
+    }
+
+    public long nextId() {
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> STATE_TIMESTAMP_SHIFT;
+            long clockBack = (current >>> SEQUENCE_BITS) & 1;
+            long sequence = current & SEQUENCE_MASK;
+            long now = currentTimestamp();
+
+            long next;
+            if (now > lastTimestamp) {
+                // 1.新的一毫秒，序列号从0开始
+                next = now << STATE_TIMESTAMP_SHIFT | clockBack << SEQUENCE_BITS;
+            } else if (lastTimestamp - now <= maxBackwardMs) {
+                // 2.同一毫秒或小幅回拨，沿用上次的时间戳
+                if (sequence == SEQUENCE_MASK) {
+                    // 2.1序列号用完，等到下一毫秒
+                    sequenceExhaustedCount.increment();
+                    LockSupport.parkNanos(100_000);
+                    continue;
+                }
+                next = current + 1;
+            } else {
+                // 3.大幅回拨，翻转回拨位后用当前时间重新开始
+                next = flipClockBack(current, lastTimestamp, clockBack, now);
+                if (next >= 0) {
+                    generatedCount.increment();
+                    return toId(next);
+                }
+                continue;
+            }
+            if (state.compareAndSet(current, next)) {
+                generatedCount.increment();
+                return toId(next);
+            }
+        }
+    }
+
+    /**
+     * 翻转回拨位。翻转后的取值上次使用时发出的时间戳如果还没有被当前时间越过（第二次大幅回拨回到了
+     * 第一次回拨前的时间段），继续发号会和那时的ID重复，拒绝发号
+     *
+     * @return 翻转后的状态，CAS失败时返回-1
+     */
+    private synchronized long flipClockBack(long current, long lastTimestamp, long clockBack, long now) {
+        int flipped = (int) (clockBack ^ 1);
+        if (now <= issuedUntil[flipped]) {
+            throw new IllegalStateException("时钟回拨" + (lastTimestamp - now) + "ms，回拨位的两个取值在当前时间都已发过号，拒绝发号");
+        }
+        long next = now << STATE_TIMESTAMP_SHIFT | (long) flipped << SEQUENCE_BITS;
+        if (!state.compareAndSet(current, next)) {
+            return -1;
+        }
+        issuedUntil[(int) clockBack] = lastTimestamp;
+        clockBackwardCount.increment();
+        log.warn("检测到时钟回拨{}ms，翻转回拨位", lastTimestamp - now);
+        return next;
+    }
+
+    private long toId(long state) {
+        long timestamp = state >>> STATE_TIMESTAMP_SHIFT;
+        long clockBack = (state >>> SEQUENCE_BITS) & 1;
+        long sequence = state & SEQUENCE_MASK;
+        return timestamp << TIMESTAMP_SHIFT
+                | clockBack << CLOCK_BACK_SHIFT
+                | workerId << WORKER_SHIFT
+                | sequence;
+    }
+
+    private long currentTimestamp() {
+        return clock.getAsLong() - BEGIN_TIMESTAMP;
+    }
+
+    /**
+     * 依次尝试 SET snowflake:worker:{id} instanceId NX EX ttl，拿到第一个空闲的 workerId
+     */
+    private long leaseWorkerId() {
+        for (long id = 0; id <= MAX_WORKER_ID; id++) {
+            Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(
+                    SNOWFLAKE_WORKER_KEY + id, instanceId, SNOWFLAKE_WORKER_TTL, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                return id;
+            }
+        }
+        throw new IllegalStateException("没有可用的workerId");
+    }
+
+    /**
+     * 续期租约，租约丢失（例如长时间GC或网络中断）则重新租用一个workerId
+     */
+    private void heartbeat() {
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                    Collections.singletonList(SNOWFLAKE_WORKER_KEY + workerId),
+                    instanceId, SNOWFLAKE_WORKER_TTL.toString());
+            if (renewed == null || renewed == 0L) {
+                long old = workerId;
+                workerId = leaseWorkerId();
+                log.warn("workerId租约丢失，重新租用 {} -> {}", old, workerId);
+            }
+        } catch (Exception e) {
+            log.error("workerId续期失败", e);
+        }
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 已生成的ID数量
+     */
+    public long getGeneratedCount() {
+        return generatedCount.sum();
+    }
+
+    /**
+     * 因同一毫秒序列号用完而等待的次数
+     */
+    public long getSequenceExhaustedCount() {
+        return sequenceExhaustedCount.sum();
+    }
+
+    /**
+     * 大幅时钟回拨（翻转回拨位）的次数
+     */
+    public long getClockBackwardCount() {
+        return clockBackwardCount.sum();
+    }
+}
@@ -0,0 +1,86 @@
+package com.hmdp.utils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 进程内的秒杀券售罄标记
+ * <p>
+ * 秒杀脚本返回库存不足时标记售罄，并通过 Pub/Sub 通知其他节点；之后的请求在发号和执行脚本之前直接拒绝，不再访问Redis。
+ * 补充库存时清除标记并广播。Pub/Sub 消息可能丢失，标记只保留一段时间，过期后放行一个请求到Redis重新确认。
+ * </p>
+ */
+@Component
+public class SoldOutRegistry {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${hmdp.seckill.sold-out-ttl:30s}")
+    private Duration soldOutTtl;
+
+    /**
+     * 券id -> 标记过期时间（毫秒）
+     */
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        // 其他节点的售罄和补库存，消息格式 voucherId:1（售罄）或 voucherId:0（补库存）
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int colon = body.indexOf(':');
+            Long voucherId = Long.valueOf(body.substring(0, colon));
+            if ("1".equals(body.substring(colon + 1))) {
+                soldOut.put(voucherId, System.currentTimeMillis() + soldOutTtl.toMillis());
+            } else {
+                soldOut.remove(voucherId);
+            }
+        }, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    public boolean isSoldOut(Long voucherId) {
+        Long expireAt = soldOut.get(voucherId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt < System.currentTimeMillis()) {
+            // 过期：只有删除成功的那个请求去Redis确认，其余请求继续按售罄处理
+            return !soldOut.remove(voucherId, expireAt);
+        }
+        return true;
+    }
+
+    /**
+     * 标记售罄，已经标记过的不重复广播
+     */
+    public void markSoldOut(Long voucherId) {
+        long expireAt = System.currentTimeMillis() + soldOutTtl.toMillis();
+        if (soldOut.put(voucherId, expireAt) == null) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId + ":1");
+        }
+    }
+
+    /**
+     * 补充库存后清除所有节点的售罄标记
+     */
+    public void reset(Long voucherId) {
+        soldOut.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId + ":0");
+    }
+}
@@ -0,0 +1,342 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀库存分片
+ * <p>
+ * 热门券的库存拆成 N 个分片 seckill:stock:{voucherId:i}，已下单用户集合同样拆成 seckill:order:{voucherId:i}，
+ * 同一分片的两个key带相同的hash tag，落在同一个slot，可以在一个Lua脚本里同时操作。
+ * 用户固定属于 userId mod N 号分片，一人一单在这个分片的集合上判断，仍然是精确的。
+ * 分片数记录在 seckill:shards 哈希中，没有记录的券只有一个分片，走原来的 seckill:stock:{voucherId}。
+ * 秒杀脚本只访问一个分片的key，订单先写入本分片的 seckill:pending:{voucherId:i}，再由调用方转发到 stream.orders。
+ * 各分片按用户分布消耗库存，定时任务把剩余库存重新均分到各个分片，转移过程记录在源分片的在途记录中，可以重放。
+ * </p>
+ */
+@Slf4j
+@Component
+public class StockShardManager {
+
+    private static final DefaultRedisScript<Long> STOCK_TRANSFER_OUT_SCRIPT;
+
+    private static final DefaultRedisScript<Long> STOCK_TRANSFER_IN_SCRIPT;
+
+    static {
+        STOCK_TRANSFER_OUT_SCRIPT = new DefaultRedisScript<>();
+        STOCK_TRANSFER_OUT_SCRIPT.setLocation(new ClassPathResource("lua/stock-transfer-out.lua"));
+        STOCK_TRANSFER_OUT_SCRIPT.setResultType(Long.class);
+        STOCK_TRANSFER_IN_SCRIPT = new DefaultRedisScript<>();
+        STOCK_TRANSFER_IN_SCRIPT.setLocation(new ClassPathResource("lua/stock-transfer-in.lua"));
+        STOCK_TRANSFER_IN_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 到账记录的保留时间，只要在这之前重放过在途记录，就不会重复到账
+     */
+    private static final long APPLIED_TTL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Value("${hmdp.seckill.rebalance-interval:10s}")
+    private Duration rebalanceInterval;
+
+    /**
+     * 券id -> 分片数；券创建后分片数不再变化，短暂缓存只是为了让刚创建的券尽快生效
+     */
+    private final LRUCache<Long, Integer> shardCounts = CacheUtil.newLRUCache(10000, TimeUnit.SECONDS.toMillis(10));
+
+    private final ScheduledExecutorService rebalanceExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    @PostConstruct
+    private void init() {
+        // 启动时立即执行一次，重放上次退出时没有完成的在途转移
+        rebalanceExecutor.scheduleWithFixedDelay(this::rebalance,
+                0, rebalanceInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        rebalanceExecutor.shutdownNow();
+    }
+
+    /**
+     * 券的分片数，未分片的券为1
+     */
+    public int shardCount(Long voucherId) {
+        Integer cached = shardCounts.get(voucherId, false);
+        if (cached != null) {
+            return cached;
+        }
+        Object value = stringRedisTemplate.opsForHash().get(SECKILL_SHARDS_KEY, voucherId.toString());
+        int shards = value == null ? 1 : Integer.parseInt(value.toString());
+        shardCounts.put(voucherId, shards);
+        return shards;
+    }
+
+    /**
+     * 用户所属的分片
+     */
+    public static int homeShard(Long userId, int shards) {
+        return (int) Math.floorMod(userId, (long) shards);
+    }
+
+    /**
+     * 除所属分片外的其他分片，从所属分片之后的第 offset 个开始依次排列
+     *
+     * @param offset 0 ~ shards-2
+     */
+    public static int[] siblings(int home, int shards, int offset) {
+        int[] siblings = new int[shards - 1];
+        for (int i = 0; i < shards - 1; i++) {
+            siblings[i] = (home + 1 + (offset + i) % (shards - 1)) % shards;
+        }
+        return siblings;
+    }
+
+    public static String stockKey(Long voucherId, int shard) {
+        return SECKILL_STOCK_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    public static String orderKey(Long voucherId, int shard) {
+        return SECKILL_ORDER_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    public static String pendingKey(Long voucherId, int shard) {
+        return SECKILL_PENDING_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    private static String transitKey(Long voucherId, int shard) {
+        return SECKILL_TRANSIT_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    private static String appliedKey(Long voucherId, int shard) {
+        return SECKILL_APPLIED_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    /**
+     * 把库存均分到 shards 个分片（余数给前面的分片），最后登记分片数
+     */
+    public void initShards(Long voucherId, int stock, int shards) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (int i = 0; i < shards; i++) {
+                stringConnection.set(stockKey(voucherId, i), String.valueOf(share(stock, shards, i)));
+            }
+            return null;
+        });
+        stringRedisTemplate.opsForHash().put(SECKILL_SHARDS_KEY, voucherId.toString(), String.valueOf(shards));
+        shardCounts.put(voucherId, shards);
+    }
+
+    /**
+     * 总量 total 均分后第 i 个分片应得的数量
+     */
+    private static long share(long total, int shards, int i) {
+        return total / shards + (i < total % shards ? 1 : 0);
+    }
+
+    /**
+     * 所有分片券的剩余库存重新均分，集群内只有一个实例执行
+     * <p>
+     * 每次先重放上次没有完成的在途转移（进程崩溃、被关闭、Redis异常都可能留下），再按当前库存均分。
+     * 执行期间 seckill:rebalance:gen 为奇数，{@link #isDepleted} 据此判断读到的库存是否可能不完整。
+     * </p>
+     */
+    public void rebalance() {
+        RLock lock = redissonClient.getLock(LOCK_SECKILL_REBALANCE_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            // 上次执行中断时计数器停在奇数，不再加一
+            String gen = stringRedisTemplate.opsForValue().get(SECKILL_REBALANCE_GEN_KEY);
+            if (gen == null || Long.parseLong(gen) % 2 == 0) {
+                stringRedisTemplate.opsForValue().increment(SECKILL_REBALANCE_GEN_KEY);
+            }
+            for (Map.Entry<Long, Integer> entry : shardedVouchers().entrySet()) {
+                replayTransfers(entry.getKey(), entry.getValue());
+                rebalance(entry.getKey(), entry.getValue());
+            }
+            stringRedisTemplate.opsForValue().increment(SECKILL_REBALANCE_GEN_KEY);
+        } catch (Exception e) {
+            log.error("秒杀库存分片再平衡失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 券id -> 分片数，只包含分片券
+     */
+    public Map<Long, Integer> shardedVouchers() {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(SECKILL_SHARDS_KEY);
+        Map<Long, Integer> vouchers = new HashMap<>(entries.size());
+        entries.forEach((k, v) -> vouchers.put(Long.valueOf(k.toString()), Integer.valueOf(v.toString())));
+        return vouchers;
+    }
+
+    /**
+     * 分片券是否确实已经售罄：所有分片库存都为0，并且读取期间没有再平衡在执行（没有在途库存）
+     * <p>
+     * 读取前后各读一次再平衡计数器，计数器为奇数或前后不一致时不能确定，按未售罄处理。
+     * </p>
+     */
+    public boolean isDepleted(Long voucherId, int shards) {
+        // 分片在不同节点上时pipeline内的命令没有先后顺序，计数器单独读取
+        String before = stringRedisTemplate.opsForValue().get(SECKILL_REBALANCE_GEN_KEY);
+        if (before != null && Long.parseLong(before) % 2 != 0) {
+            return false;
+        }
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (int i = 0; i < shards; i++) {
+                stringConnection.get(stockKey(voucherId, i));
+            }
+            return null;
+        });
+        for (Object value : values) {
+            if (value != null && Long.parseLong(value.toString()) > 0) {
+                return false;
+            }
+        }
+        return Objects.equals(before, stringRedisTemplate.opsForValue().get(SECKILL_REBALANCE_GEN_KEY));
+    }
+
+    /**
+     * 1.pipeline读出各分片库存，算出从哪个分片向哪个分片转移多少
+     * 2.每笔转移：源分片扣库存并记入在途（一个脚本），目标分片按转移编号幂等加库存，再删除在途记录和到账记录
+     * 任何一步中断，在途记录都还在源分片的slot里，下次执行时重放，库存不会丢失也不会重复增加
+     */
+    private void rebalance(Long voucherId, int shards) {
+        // 1.读取各分片库存
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (int i = 0; i < shards; i++) {
+                stringConnection.get(stockKey(voucherId, i));
+            }
+            return null;
+        });
+        long[] stocks = new long[shards];
+        for (int i = 0; i < shards; i++) {
+            Object value = values.get(i);
+            stocks[i] = value == null ? 0 : Math.max(Long.parseLong(value.toString()), 0);
+        }
+        // 2.逐笔转移，取时库存已被抢走则放弃这一笔
+        long moved = 0;
+        for (long[] transfer : planTransfers(stocks)) {
+            int from = (int) transfer[0];
+            int to = (int) transfer[1];
+            long amount = transfer[2];
+            String transferId = UUID.randomUUID().toString();
+            Long out = stringRedisTemplate.execute(STOCK_TRANSFER_OUT_SCRIPT,
+                    Arrays.asList(stockKey(voucherId, from), transitKey(voucherId, from)),
+                    transferId, String.valueOf(to), String.valueOf(amount));
+            if (out != null && out == 1L) {
+                completeTransfer(voucherId, from, transferId, to, amount);
+                moved += amount;
+            }
+        }
+        if (moved > 0) {
+            log.info("秒杀库存分片再平衡 voucherId={}, moved={}", voucherId, moved);
+        }
+    }
+
+    /**
+     * 计算均分各分片库存需要的转移，已经均衡（最大最小相差不超过1）或已经卖完时不转移
+     *
+     * @return {源分片, 目标分片, 数量}
+     */
+    static List<long[]> planTransfers(long[] stocks) {
+        int shards = stocks.length;
+        long total = 0;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (long stock : stocks) {
+            total += stock;
+            min = Math.min(min, stock);
+            max = Math.max(max, stock);
+        }
+        List<long[]> transfers = new ArrayList<>();
+        if (total == 0 || max - min <= 1) {
+            return transfers;
+        }
+        long[] diffs = new long[shards];
+        for (int i = 0; i < shards; i++) {
+            diffs[i] = stocks[i] - share(total, shards, i);
+        }
+        // 多出的分片依次补给缺少的分片
+        int to = 0;
+        for (int from = 0; from < shards; from++) {
+            while (diffs[from] > 0) {
+                while (diffs[to] >= 0) {
+                    to++;
+                }
+                long amount = Math.min(diffs[from], -diffs[to]);
+                transfers.add(new long[]{from, to, amount});
+                diffs[from] -= amount;
+                diffs[to] += amount;
+            }
+        }
+        return transfers;
+    }
+
+    /**
+     * 重放源分片上遗留的在途转移，记录格式 目标分片:数量
+     */
+    private void replayTransfers(Long voucherId, int shards) {
+        for (int from = 0; from < shards; from++) {
+            Map<Object, Object> transits = stringRedisTemplate.opsForHash().entries(transitKey(voucherId, from));
+            for (Map.Entry<Object, Object> transit : transits.entrySet()) {
+                String value = transit.getValue().toString();
+                int colon = value.indexOf(':');
+                int to = Integer.parseInt(value.substring(0, colon));
+                long amount = Long.parseLong(value.substring(colon + 1));
+                completeTransfer(voucherId, from, transit.getKey().toString(), to, amount);
+                log.warn("重放在途库存 voucherId={}, from={}, to={}, amount={}", voucherId, from, to, amount);
+            }
+        }
+    }
+
+    /**
+     * 目标分片到账（按转移编号去重），然后删除在途记录，最后删除到账记录；顺序不能调换，否则重放时会重复到账
+     */
+    private void completeTransfer(Long voucherId, int from, String transferId, int to, long amount) {
+        stringRedisTemplate.execute(STOCK_TRANSFER_IN_SCRIPT,
+                Arrays.asList(stockKey(voucherId, to), appliedKey(voucherId, to)),
+                transferId, String.valueOf(amount), String.valueOf(APPLIED_TTL_MILLIS));
+        stringRedisTemplate.opsForHash().delete(transitKey(voucherId, from), transferId);
+        stringRedisTemplate.opsForHash().delete(appliedKey(voucherId, to), transferId);
+    }
+}
@@ -5,4 +5,15 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    public static final int BLOOM_LOAD_PAGE_SIZE = 1000;
+    public static final int BLOG_LIKERS_TOP = 5;
+    public static final int LIKE_FLUSH_BATCH_SIZE = 500;
+    public static final int KNOWN_BLOG_CACHE_SIZE = 10000;
+    public static final int HOT_RANK_LOAD_PAGE_SIZE = 1000;
+    public static final int FEED_PUSH_BATCH_SIZE = 500;
+    public static final int SIGN_ARCHIVE_BATCH_SIZE = 500;
+    public static final int SIGN_STREAK_MAX_MONTHS = 12;
+    public static final double GEO_SEARCH_RADIUS = 5000;
+    public static final int PROVISION_BATCH_SIZE = 500;
+    public static final String PROVISION_PHONE_PREFIX = "199";
 }
@@ -0,0 +1,46 @@
+package com.hmdp.utils;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 进程内的令牌桶：每秒补充 rate 个令牌，最多攒 capacity 个
+ */
+public class TokenBucket {
+
+    private final double rate;
+
+    private final double capacity;
+
+    private final LongSupplier nanoClock;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    public TokenBucket(double rate, double capacity) {
+        this(rate, capacity, System::nanoTime);
+    }
+
+    TokenBucket(double rate, double capacity, LongSupplier nanoClock) {
+        this.rate = rate;
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        // 新桶是满的
+        this.tokens = capacity;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * 尝试取走一个令牌
+     */
+    public synchronized boolean tryAcquire() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * rate / 1_000_000_000D);
+        lastRefillNanos = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
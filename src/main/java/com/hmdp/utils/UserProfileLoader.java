@@ -0,0 +1,90 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.User;
+import com.hmdp.service.IUserService;
+import jakarta.annotation.Resource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_USER_PROFILE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_PROFILE_TTL;
+
+/**
+ * 用户资料（id、昵称、头像）批量加载器
+ * <p>
+ * 先收集一批对象中的全部用户id，去重后依次查本地缓存、一次MGET查Redis、剩余的一次IN查询数据库，
+ * 再一次性回填到每个对象上，避免在循环里逐个 getById。
+ * </p>
+ */
+@Component
+public class UserProfileLoader {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private IUserService userService;
+
+    /**
+     * 批量加载用户资料
+     * @param userIds 用户id，可以重复
+     * @return 用户id -> 用户资料，不存在的用户不在结果中；返回的对象可能来自本地缓存，不要修改
+     */
+    public Map<Long, UserDTO> loadAll(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(userIds));
+        return cacheClient.queryBatchWithPassThrough(CACHE_USER_PROFILE_KEY, ids, UserDTO.class,
+                this::loadFromDb, CACHE_USER_PROFILE_TTL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 收集 items 中的用户id，批量加载后逐个回填
+     * @param items 待填充的对象
+     * @param userIdGetter 从对象中取用户id
+     * @param setter 把用户资料写回对象，用户不存在时不调用
+     */
+    public <T> void fill(List<T> items, Function<T, Long> userIdGetter, BiConsumer<T, UserDTO> setter) {
+        if (items.isEmpty()) {
+            return;
+        }
+        Set<Long> ids = items.stream().map(userIdGetter).collect(Collectors.toSet());
+        Map<Long, UserDTO> profiles = loadAll(ids);
+        for (T item : items) {
+            UserDTO profile = profiles.get(userIdGetter.apply(item));
+            if (profile != null) {
+                setter.accept(item, profile);
+            }
+        }
+    }
+
+    /**
+     * 用户修改昵称或头像后调用，清掉Redis和所有节点的本地缓存
+     */
+    public void evict(Long userId) {
+        cacheClient.delete(CACHE_USER_PROFILE_KEY + userId);
+    }
+
+    private Map<Long, UserDTO> loadFromDb(Collection<Long> ids) {
+        return userService.query()
+                .select("id", "nick_name", "icon")
+                .in("id", ids)
+                .list()
+                .stream()
+                .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class)));
+    }
+}
@@ -0,0 +1,34 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 缓存预热完成之前拒绝所有请求（503），避免请求读到还没写入的库存、缓存等key
+ */
+public class WarmupInterceptor implements HandlerInterceptor {
+
+    private final CacheWarmer cacheWarmer;
+
+    public WarmupInterceptor(CacheWarmer cacheWarmer) {
+        this.cacheWarmer = cacheWarmer;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (cacheWarmer.isReady()) {
+            return true;
+        }
+        response.setStatus(503);
+        response.setHeader("Retry-After", "1");
+        response.setContentType("application/json;charset=UTF-8");
+        response.getOutputStream().write(
+                JSONUtil.toJsonStr(Result.fail("服务启动中，请稍后再试")).getBytes(StandardCharsets.UTF_8));
+        return false;
+    }
+}
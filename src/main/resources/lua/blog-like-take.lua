@@ -0,0 +1,17 @@
+---
+--- Description 取出待回写的点赞数增量：把增量哈希改名为回写中的哈希，再读取全部内容
+---
+-- 待回写的增量，即: blog:liked:delta
+local deltaKey = KEYS[1];
+-- 回写中的增量，即: blog:liked:delta:flushing
+local flushingKey = KEYS[2];
+
+if (redis.call('EXISTS', flushingKey) == 0) then
+    -- 上一次已回写成功，取新的增量
+    if (redis.call('EXISTS', deltaKey) == 0) then
+        return {};
+    end
+    redis.call('RENAME', deltaKey, flushingKey);
+end
+-- 上一次回写失败时，先重试上一次的增量
+return redis.call('HGETALL', flushingKey);
@@ -0,0 +1,44 @@
+---
+--- Description 点赞/取消点赞（一次往返完成判断、切换、计数增量和热榜分数调整）
+---
+-- 点赞集合key，即: blog:liked:{blogId}，member 为用户id，score 为点赞时间
+local likedKey = KEYS[1];
+-- 待回写的点赞数增量，即: blog:liked:delta，field 为博客id
+local deltaKey = KEYS[2];
+-- 热榜，即: blog:hot，member 为博客id，score 为热度
+local hotKey = KEYS[3];
+-- 热榜中博客的点赞数，即: blog:hot:liked，field 为博客id
+local hotLikedKey = KEYS[4];
+-- 用户id
+local userId = ARGV[1];
+-- 当前时间（毫秒）
+local now = ARGV[2];
+-- 博客id
+local blogId = ARGV[3];
+
+local delta;
+if (redis.call('ZSCORE', likedKey, userId)) then
+    -- 已点赞，取消
+    redis.call('ZREM', likedKey, userId);
+    delta = -1;
+else
+    -- 未点赞，点赞
+    redis.call('ZADD', likedKey, now, userId);
+    delta = 1;
+end
+redis.call('HINCRBY', deltaKey, blogId, delta);
+
+-- 博客在热榜上时调整热度：score = log10(max(liked, 1)) + 时间项，只需加上 log10 部分的差值
+if (redis.call('ZSCORE', hotKey, blogId)) then
+    local old = tonumber(redis.call('HGET', hotLikedKey, blogId) or '0');
+    local new = math.max(old + delta, 0);
+    redis.call('HSET', hotLikedKey, blogId, new);
+    local diff = math.log10(math.max(new, 1)) - math.log10(math.max(old, 1));
+    if (diff ~= 0) then
+        redis.call('ZINCRBY', hotKey, tostring(diff), blogId);
+    end
+end
+if (delta > 0) then
+    return 1;
+end
+return 0;
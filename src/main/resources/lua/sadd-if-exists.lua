@@ -0,0 +1,12 @@
+---
+--- Description 集合已经加载时才加入成员，避免key刚好过期时建出一个只有新成员、没有过期时间的集合
+---
+-- 集合key
+local key = KEYS[1];
+-- 新成员
+local member = ARGV[1];
+
+if (redis.call('EXISTS', key) == 1) then
+    return redis.call('SADD', key, member);
+end
+return 0;
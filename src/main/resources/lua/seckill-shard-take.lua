@@ -0,0 +1,22 @@
+---
+--- Description 分片库存秒杀：所属分片库存不足时，从其他分片扣库存，订单记入该分片的待发送订单
+---
+-- 其他分片的库存key，即: seckill:stock:{voucherId:j}
+local stockKey = KEYS[1];
+-- 该分片的待发送订单，即: seckill:pending:{voucherId:j}
+local pendingKey = KEYS[2];
+-- 用户id
+local userId = ARGV[1];
+-- 订单id
+local orderId = ARGV[2];
+
+local stock = tonumber(redis.call('GET', stockKey) or '0');
+if (stock <= 0) then
+    -- 库存不足
+    return 1;
+end
+local now = redis.call('TIME');
+local nowMs = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000);
+redis.call('INCRBY', stockKey, -1);
+redis.call('HSET', pendingKey, orderId, userId .. ':' .. nowMs);
+return 0;
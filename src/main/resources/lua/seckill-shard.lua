@@ -0,0 +1,48 @@
+---
+--- Description 分片库存秒杀：在用户所属分片上判断是否已下单并扣库存，订单先记入本分片的待发送订单
+---
+-- 所属分片的库存key，即: seckill:stock:{voucherId:i}
+local stockKey = KEYS[1];
+-- 所属分片的已下单用户集合，即: seckill:order:{voucherId:i}
+local orderKey = KEYS[2];
+-- 所属分片的待发送订单，即: seckill:pending:{voucherId:i}，三个key带相同的hash tag，在同一个slot
+local pendingKey = KEYS[3];
+-- 用户id
+local userId = ARGV[1];
+-- 订单id
+local orderId = ARGV[2];
+-- 开始时间
+local beginTime = tonumber(ARGV[3]);
+-- 结束时间
+local endTime = tonumber(ARGV[4]);
+
+-- 秒杀开放时间（毫秒时间戳，0 表示不限），用Redis服务器时间判断
+local now = redis.call('TIME');
+local nowMs = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000);
+if (beginTime > 0 and nowMs < beginTime) then
+    -- 尚未开始
+    return 4;
+end
+if (endTime > 0 and nowMs > endTime) then
+    -- 已经结束
+    return 5;
+end
+
+-- 用户总是落在同一个分片，在这里判重就是精确的
+if (redis.call('SISMEMBER', orderKey, userId) == 1) then
+    -- 用户下过单
+    return 2;
+end
+
+local stock = tonumber(redis.call('GET', stockKey) or '0');
+if (stock > 0) then
+    -- 本分片库存充足，扣库存、下单；stream.orders 在其他slot，订单由调用方转发到队列后再删除
+    redis.call('INCRBY', stockKey, -1);
+    redis.call('SADD', orderKey, userId);
+    redis.call('HSET', pendingKey, orderId, userId .. ':' .. nowMs);
+    return 0;
+end
+
+-- 本分片库存不足：先占住下单资格，再由调用方去其他分片扣库存，都失败时释放
+redis.call('SADD', orderKey, userId);
+return 3;
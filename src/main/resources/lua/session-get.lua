@@ -0,0 +1,20 @@
+---
+--- Description 读取登录会话，并在剩余有效期低于阈值时续期（一次往返完成 HGETALL + TTL + EXPIRE）
+---
+-- 会话key，即: login:token:{token}
+local key = KEYS[1];
+-- 会话有效期（秒）
+local ttl = tonumber(ARGV[1]);
+-- 剩余有效期低于该值（秒）才续期
+local threshold = tonumber(ARGV[2]);
+
+local fields = redis.call('HGETALL', key);
+if (#fields == 0) then
+    -- 会话不存在
+    return fields;
+end
+
+if (redis.call('TTL', key) < threshold) then
+    redis.call('EXPIRE', key, ttl);
+end
+return fields;
@@ -0,0 +1,16 @@
+---
+--- Description 续期 worker id 租约（只有持有者才能续期）
+---
+-- 租约key，即: snowflake:worker:{workerId}
+local key = KEYS[1];
+-- 当前实例标识
+local instanceId = ARGV[1];
+-- 租约有效期（秒）
+local ttl = ARGV[2];
+
+if (redis.call('GET', key) == instanceId) then
+    redis.call('EXPIRE', key, ttl);
+    return 1;
+end
+-- 租约已丢失
+return 0;
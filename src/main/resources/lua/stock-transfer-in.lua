@@ -0,0 +1,19 @@
+---
+--- Description 库存分片再平衡：把在途库存加到目标分片，同一个转移编号只加一次（可重放）
+---
+-- 目标库存分片key，即: seckill:stock:{voucherId:j}
+local stockKey = KEYS[1];
+-- 已到账的转移编号，即: seckill:applied:{voucherId:j}，与目标分片在同一个slot
+local appliedKey = KEYS[2];
+-- 转移编号
+local transferId = ARGV[1];
+-- 数量
+local amount = tonumber(ARGV[2]);
+-- 到账记录保留时间（毫秒）
+local ttl = tonumber(ARGV[3]);
+
+if (redis.call('HSETNX', appliedKey, transferId, amount) == 1) then
+    redis.call('INCRBY', stockKey, amount);
+end
+redis.call('PEXPIRE', appliedKey, ttl);
+return 1;
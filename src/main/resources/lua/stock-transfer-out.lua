@@ -0,0 +1,20 @@
+---
+--- Description 库存分片再平衡：从分片取出库存并记入本分片的在途记录，剩余不足时不取
+---
+-- 库存分片key，即: seckill:stock:{voucherId:i}
+local stockKey = KEYS[1];
+-- 在途记录，即: seckill:transit:{voucherId:i}，与库存分片在同一个slot
+local transitKey = KEYS[2];
+-- 转移编号
+local transferId = ARGV[1];
+-- 目标分片
+local target = ARGV[2];
+-- 数量
+local amount = tonumber(ARGV[3]);
+
+if (tonumber(redis.call('GET', stockKey) or '0') < amount) then
+    return 0;
+end
+redis.call('INCRBY', stockKey, -amount);
+redis.call('HSET', transitKey, transferId, target .. ':' .. amount);
+return 1;
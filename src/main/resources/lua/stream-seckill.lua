@@ -2,7 +2,7 @@
 --- Generated by EmmyLua(https://github.com/EmmyLua)
 --- Created by ghp.
 --- DateTime: 2023/7/16 18:22
---- Description 判断库存是否充足 && 判断用户是否已下单 （以stream作为消息队列）
+--- Description 判断是否在秒杀时间内 && 判断库存是否充足 && 判断用户是否已下单 （以stream作为消息队列）
 ---
 -- 优惠券id
 local voucherId = ARGV[1];
@@ -10,12 +10,28 @@ local voucherId = ARGV[1];
 local userId = ARGV[2];
 -- 订单id
 local orderId = ARGV[3]
+-- 开始时间
+local beginTime = tonumber(ARGV[4]);
+-- 结束时间
+local endTime = tonumber(ARGV[5]);
 
 -- 库存的key
 local stockKey = 'seckill:stock:' .. voucherId;
 -- 订单key
 local orderKey = 'seckill:order:' .. voucherId;
 
+-- 秒杀开放时间（毫秒时间戳，0 表示不限），用Redis服务器时间判断
+local now = redis.call('TIME');
+local nowMs = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000);
+if (beginTime > 0 and nowMs < beginTime) then
+    -- 尚未开始
+    return 4;
+end
+if (endTime > 0 and nowMs > endTime) then
+    -- 已经结束
+    return 5;
+end
+
 -- 判断库存是否充足 get stockKey > 0 ?
 local stock = redis.call('GET', stockKey);
 if (tonumber(stock) <= 0) then
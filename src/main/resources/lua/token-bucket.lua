@@ -0,0 +1,33 @@
+---
+--- Description 分布式令牌桶：按Redis服务器时间补充令牌，取走一个令牌
+---
+-- 令牌桶key，即: seckill:limit:{voucherId}
+local key = KEYS[1];
+-- 每秒补充的令牌数
+local rate = tonumber(ARGV[1]);
+-- 桶容量（允许的突发量）
+local capacity = tonumber(ARGV[2]);
+
+local now = redis.call('TIME');
+local nowMs = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000);
+
+local bucket = redis.call('HMGET', key, 'tokens', 'ts');
+local tokens = tonumber(bucket[1]);
+local ts = tonumber(bucket[2]);
+if (tokens == nil or ts == nil) then
+    -- 新桶是满的
+    tokens = capacity;
+    ts = nowMs;
+end
+-- 按经过的时间补充令牌，不超过容量
+tokens = math.min(capacity, tokens + math.max(0, nowMs - ts) * rate / 1000);
+
+local allowed = 0;
+if (tokens >= 1) then
+    tokens = tokens - 1;
+    allowed = 1;
+end
+redis.call('HSET', key, 'tokens', tokens, 'ts', nowMs);
+-- 桶重新装满所需的时间之后没有意义了
+redis.call('PEXPIRE', key, math.ceil(capacity / rate * 1000) + 1000);
+return allowed;
@@ -19,6 +19,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 import java.util.List;
 @SpringBootTest
@@ -79,6 +83,33 @@ public class UserLoginBatch {
     }
 
 
+    /**
+     * 调用服务端批量接口生成 tokens.txt（需开启 hmdp.loadtest.enabled）
+     * 会话在服务端按批 pipeline 写入，不再逐个走登录接口
+     */
+    @Test
+    public void bulkProvision() {
+        String provisionUrl = "http://localhost:8081/user/loadtest/sessions?count=1000&createMissing=true";
+        String tokenFilePath = "tokens.txt";
+
+        try {
+            HttpClient httpClient = HttpClients.createDefault();
+            HttpResponse response = httpClient.execute(new HttpPost(provisionUrl));
+            if (response.getStatusLine().getStatusCode() != 200) {
+                System.out.println("批量创建会话失败，状态码: " + response.getStatusLine().getStatusCode());
+                return;
+            }
+            // 服务端按行流式返回token，直接写入文件
+            try (InputStream in = response.getEntity().getContent()) {
+                long size = Files.copy(in, Paths.get(tokenFilePath), StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("批量创建会话完成，写入 " + size + " 字节");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+
     // 解析JSON响应获取token的方法，这里只是示例，具体实现需要根据实际响应格式进行解析
     private static String parseTokenFromJson(String json) {
         try {
@@ -0,0 +1,93 @@
+package com.hmdp;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * UV统计内存对比：100万个访客分别写入 HyperLogLog 和 Set，比较 MEMORY USAGE 和统计误差
+ * 需要本地Redis和MySQL，类名不以 Test 结尾，mvn test 不会执行，需要手动运行
+ */
+@Slf4j
+@SpringBootTest
+public class UvBenchmark {
+
+    private static final int VISITORS = 1_000_000;
+    private static final int BATCH = 1000;
+
+    private static final String HLL_KEY = "uv:benchmark:hll";
+    private static final String SET_KEY = "uv:benchmark:set";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Test
+    public void compareMemory() {
+        stringRedisTemplate.delete(HLL_KEY);
+        stringRedisTemplate.delete(SET_KEY);
+        try {
+            long hllMillis = write(true);
+            long setMillis = write(false);
+
+            long hllCount = stringRedisTemplate.opsForHyperLogLog().size(HLL_KEY);
+            long setCount = stringRedisTemplate.opsForSet().size(SET_KEY);
+            long hllBytes = memoryUsage(HLL_KEY);
+            long setBytes = memoryUsage(SET_KEY);
+
+            log.info("访客数: {}", VISITORS);
+            log.info("HyperLogLog: count={}, 误差={}%, 内存={} bytes, 写入耗时={}ms",
+                    hllCount, String.format("%.3f", Math.abs(hllCount - VISITORS) * 100.0 / VISITORS), hllBytes, hllMillis);
+            log.info("Set:         count={}, 内存={} bytes, 写入耗时={}ms", setCount, setBytes, setMillis);
+
+            // HyperLogLog 标准误差 0.81%，留出余量
+            assertThat(Math.abs(hllCount - VISITORS)).isLessThan(VISITORS * 2 / 100);
+            assertThat(setCount).isEqualTo(VISITORS);
+            // HLL 最多约12KB，Set 存100万个成员至少是它的上百倍
+            assertThat(hllBytes).isPositive().isLessThanOrEqualTo(16 * 1024);
+            assertThat(setBytes).isGreaterThan(hllBytes * 100);
+        } finally {
+            stringRedisTemplate.delete(HLL_KEY);
+            stringRedisTemplate.delete(SET_KEY);
+        }
+    }
+
+    /**
+     * 每 BATCH 个访客一条 PFADD / SADD，BATCH 条命令一次pipeline
+     */
+    private long write(boolean hll) {
+        long begin = System.currentTimeMillis();
+        for (int start = 0; start < VISITORS; start += BATCH * BATCH) {
+            int from = start;
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (int b = from; b < Math.min(from + BATCH * BATCH, VISITORS); b += BATCH) {
+                    String[] ids = new String[Math.min(BATCH, VISITORS - b)];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = String.valueOf(1_000_000_000L + b + i);
+                    }
+                    if (hll) {
+                        stringConnection.pfAdd(HLL_KEY, ids);
+                    } else {
+                        stringConnection.sAdd(SET_KEY, ids);
+                    }
+                }
+                return null;
+            });
+        }
+        return System.currentTimeMillis() - begin;
+    }
+
+    private long memoryUsage(String key) {
+        Object bytes = stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute(
+                "MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8)));
+        return bytes == null ? -1 : ((Number) bytes).longValue();
+    }
+}
@@ -0,0 +1,131 @@
+package com.hmdp.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SignMonthServiceImplTest {
+
+    /**
+     * 按 BITFIELD u31 的读法构造：第 d 天在第 31-d 位
+     */
+    private static long bitfield(int... days) {
+        long value = 0;
+        for (int day : days) {
+            value |= 1L << (31 - day);
+        }
+        return value;
+    }
+
+    /**
+     * 第 from ~ to 天都签到的位图，第 d 天在第 d-1 位
+     */
+    private static int days(int from, int to) {
+        int bits = 0;
+        for (int d = from; d <= to; d++) {
+            bits |= 1 << (d - 1);
+        }
+        return bits;
+    }
+
+    @Test
+    void toBitsPutsFirstDayAtLowestBit() {
+        assertThat(SignMonthServiceImpl.toBits(bitfield(1))).isEqualTo(1);
+        assertThat(SignMonthServiceImpl.toBits(bitfield(31))).isEqualTo(1 << 30);
+        assertThat(SignMonthServiceImpl.toBits(bitfield(1, 3, 31))).isEqualTo(0b101 | 1 << 30);
+        assertThat(SignMonthServiceImpl.toBits(0)).isZero();
+    }
+
+    @Test
+    void toBitsRoundTripsEveryDay() {
+        for (int day = 1; day <= 31; day++) {
+            assertThat(SignMonthServiceImpl.toBits(bitfield(day))).isEqualTo(1 << (day - 1));
+        }
+    }
+
+    @Test
+    void runEndingAtCountsConsecutiveOnes() {
+        // 第 3~5 位为1，第 2 位为0
+        int bits = 0b111011;
+        assertThat(SignMonthServiceImpl.runEndingAt(bits, 5)).isEqualTo(3);
+        assertThat(SignMonthServiceImpl.runEndingAt(bits, 1)).isEqualTo(2);
+        assertThat(SignMonthServiceImpl.runEndingAt(bits, 2)).isZero();
+    }
+
+    @Test
+    void runEndingAtReachesBitZero() {
+        assertThat(SignMonthServiceImpl.runEndingAt(days(1, 31), 30)).isEqualTo(31);
+        assertThat(SignMonthServiceImpl.runEndingAt(days(1, 10), 9)).isEqualTo(10);
+        assertThat(SignMonthServiceImpl.runEndingAt(1, 0)).isEqualTo(1);
+    }
+
+    @Test
+    void streakCountsFromTodayWithinMonth() {
+        LocalDate today = LocalDate.of(2024, 3, 15);
+        int bits = days(1, 5) | days(11, 15);
+        assertThat(SignMonthServiceImpl.streak(today, bitsOf(Map.of(YearMonth.of(2024, 3), bits))))
+                .isEqualTo(5);
+    }
+
+    @Test
+    void streakStartsFromYesterdayWhenNotSignedToday() {
+        LocalDate today = LocalDate.of(2024, 3, 15);
+        int bits = days(12, 14);
+        assertThat(SignMonthServiceImpl.streak(today, bitsOf(Map.of(YearMonth.of(2024, 3), bits))))
+                .isEqualTo(3);
+    }
+
+    @Test
+    void streakIsZeroWhenNeitherTodayNorYesterdaySigned() {
+        LocalDate today = LocalDate.of(2024, 3, 15);
+        int bits = days(1, 13);
+        assertThat(SignMonthServiceImpl.streak(today, bitsOf(Map.of(YearMonth.of(2024, 3), bits))))
+                .isZero();
+    }
+
+    @Test
+    void streakCrossesMonthBoundaries() {
+        LocalDate today = LocalDate.of(2024, 3, 2);
+        Map<YearMonth, Integer> months = new HashMap<>();
+        months.put(YearMonth.of(2024, 3), days(1, 2));
+        // 闰年2月29天全签
+        months.put(YearMonth.of(2024, 2), days(1, 29));
+        months.put(YearMonth.of(2024, 1), days(20, 31));
+        assertThat(SignMonthServiceImpl.streak(today, bitsOf(months))).isEqualTo(2 + 29 + 12);
+    }
+
+    @Test
+    void streakFromFirstDayLooksAtPreviousMonthWhenTodayUnsigned() {
+        LocalDate today = LocalDate.of(2024, 3, 1);
+        Map<YearMonth, Integer> months = new HashMap<>();
+        months.put(YearMonth.of(2024, 2), days(25, 29));
+        assertThat(SignMonthServiceImpl.streak(today, bitsOf(months))).isEqualTo(5);
+    }
+
+    @Test
+    void streakStopsWhenPreviousMonthDoesNotEndSigned() {
+        LocalDate today = LocalDate.of(2024, 3, 3);
+        Map<YearMonth, Integer> months = new HashMap<>();
+        months.put(YearMonth.of(2024, 3), days(1, 3));
+        months.put(YearMonth.of(2024, 2), days(1, 28));
+        assertThat(SignMonthServiceImpl.streak(today, bitsOf(months))).isEqualTo(3);
+    }
+
+    @Test
+    void streakStopsAtMaxMonths() {
+        LocalDate today = LocalDate.of(2024, 3, 31);
+        // 每个月都全签，只数 2023-04 ~ 2024-03 这12个月
+        Function<YearMonth, Integer> bitsOf = month -> days(1, month.lengthOfMonth());
+        assertThat(SignMonthServiceImpl.streak(today, bitsOf)).isEqualTo(366);
+    }
+
+    private static Function<YearMonth, Integer> bitsOf(Map<YearMonth, Integer> months) {
+        return month -> months.getOrDefault(month, 0);
+    }
+}
@@ -0,0 +1,152 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.utils.StockShardManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 分片库存下单：所属分片、其他分片兜底和占位释放
+ */
+class VoucherOrderServiceImplTest {
+
+    private static final Long VOUCHER_ID = 10L;
+    private static final Long USER_ID = 7L;
+    private static final long ORDER_ID = 123L;
+    private static final int SHARDS = 3;
+    /**
+     * 7 % 3
+     */
+    private static final int HOME = 1;
+
+    private StringRedisTemplate stringRedisTemplate;
+    private SetOperations<String, String> setOps;
+    private StreamOperations<String, Object, Object> streamOps;
+    private HashOperations<String, Object, Object> hashOps;
+    private VoucherOrderServiceImpl service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        setOps = mock(SetOperations.class);
+        streamOps = mock(StreamOperations.class);
+        hashOps = mock(HashOperations.class);
+        when(stringRedisTemplate.opsForSet()).thenReturn(setOps);
+        when(stringRedisTemplate.opsForStream()).thenReturn(streamOps);
+        when(stringRedisTemplate.opsForHash()).thenReturn(hashOps);
+        service = new VoucherOrderServiceImpl();
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", stringRedisTemplate);
+    }
+
+    private void shardReturns(int shard, Long result) {
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(homeKeys(shard)), any(Object[].class)))
+                .thenReturn(result);
+    }
+
+    private void siblingReturns(int shard, Long result) {
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(takeKeys(shard)), any(Object[].class)))
+                .thenReturn(result);
+    }
+
+    private static List<String> homeKeys(int shard) {
+        return List.of(StockShardManager.stockKey(VOUCHER_ID, shard),
+                StockShardManager.orderKey(VOUCHER_ID, shard),
+                StockShardManager.pendingKey(VOUCHER_ID, shard));
+    }
+
+    private static List<String> takeKeys(int shard) {
+        return List.of(StockShardManager.stockKey(VOUCHER_ID, shard),
+                StockShardManager.pendingKey(VOUCHER_ID, shard));
+    }
+
+    private Long seckillSharded() {
+        return ReflectionTestUtils.invokeMethod(service, "seckillSharded",
+                VOUCHER_ID, USER_ID, ORDER_ID, SHARDS, new long[]{0, 0});
+    }
+
+    @Test
+    void homeShardOrderIsForwarded() {
+        shardReturns(HOME, 0L);
+
+        assertThat(seckillSharded()).isZero();
+        verify(streamOps).add(eq("stream.orders"), anyMap());
+        verify(hashOps).delete(StockShardManager.pendingKey(VOUCHER_ID, HOME), String.valueOf(ORDER_ID));
+        verify(setOps, never()).remove(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void duplicateOrderDoesNotTrySiblings() {
+        shardReturns(HOME, 2L);
+
+        assertThat(seckillSharded()).isEqualTo(2L);
+        verify(stringRedisTemplate, times(1)).execute(any(RedisScript.class), any(List.class), any(Object[].class));
+        verify(setOps, never()).remove(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void emptyHomeShardFallsOverToSibling() {
+        shardReturns(HOME, 3L);
+        siblingReturns(0, 1L);
+        siblingReturns(2, 0L);
+
+        assertThat(seckillSharded()).isZero();
+        verify(hashOps).delete(StockShardManager.pendingKey(VOUCHER_ID, 2), String.valueOf(ORDER_ID));
+        verify(streamOps).add(eq("stream.orders"), eq(Map.of(
+                "userId", USER_ID.toString(), "voucherId", VOUCHER_ID.toString(), "id", String.valueOf(ORDER_ID))));
+        // 下单成功，保留所属分片上的占位
+        verify(setOps, never()).remove(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void allShardsEmptyReleasesReservation() {
+        shardReturns(HOME, 3L);
+        siblingReturns(0, 1L);
+        siblingReturns(2, 1L);
+
+        assertThat(seckillSharded()).isEqualTo(1L);
+        verify(setOps).remove(StockShardManager.orderKey(VOUCHER_ID, HOME), USER_ID.toString());
+        verify(streamOps, never()).add(anyString(), anyMap());
+    }
+
+    @Test
+    void siblingFailureReleasesReservation() {
+        shardReturns(HOME, 3L);
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(takeKeys(0)), any(Object[].class)))
+                .thenThrow(new IllegalStateException("redis down"));
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(takeKeys(2)), any(Object[].class)))
+                .thenThrow(new IllegalStateException("redis down"));
+
+        assertThatThrownBy(this::seckillSharded).isInstanceOf(IllegalStateException.class);
+        verify(setOps).remove(StockShardManager.orderKey(VOUCHER_ID, HOME), USER_ID.toString());
+    }
+
+    @Test
+    void forwardFailureLeavesOrderPendingForRelay() {
+        shardReturns(HOME, 0L);
+        when(streamOps.add(anyString(), anyMap())).thenThrow(new IllegalStateException("redis down"));
+
+        assertThat(seckillSharded()).isZero();
+        verify(hashOps, never()).delete(anyString(), any(Object[].class));
+    }
+}
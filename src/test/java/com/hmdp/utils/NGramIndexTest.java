@@ -0,0 +1,62 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NGramIndexTest {
+
+    private NGramIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new NGramIndex();
+        index.put(1, "海底捞火锅");
+        index.put(2, "小龙坎老火锅");
+        index.put(3, "火锅");
+        index.put(4, "火锅鸡");
+        index.put(5, "锅火");
+    }
+
+    @Test
+    void ranksExactThenPrefixThenPositionThenLength() {
+        // 3 完全匹配，4 前缀，1 和 2 都在中间命中，1 位置更靠前
+        assertThat(index.search("火锅")).containsExactly(3L, 4L, 1L, 2L);
+    }
+
+    @Test
+    void bigramsMustBeContiguous() {
+        // "锅火" 包含 "火"、"锅" 两个字，但不包含连续的 "火锅"
+        assertThat(index.search("火锅")).doesNotContain(5L);
+        assertThat(index.search("海底火锅")).isEmpty();
+    }
+
+    @Test
+    void singleCharacterQueryUsesUnigrams() {
+        assertThat(index.search("鸡")).containsExactly(4L);
+        assertThat(index.search("锅")).hasSize(5);
+    }
+
+    @Test
+    void queryIsNormalized() {
+        index.put(6, "Star Bucks 咖啡");
+        assertThat(index.search("starbucks")).containsExactly(6L);
+        assertThat(index.search("  ")).isEmpty();
+    }
+
+    @Test
+    void updateReplacesOldPostings() {
+        index.put(1, "海底捞");
+        assertThat(index.search("火锅")).doesNotContain(1L);
+        assertThat(index.search("海底")).containsExactly(1L);
+        assertThat(index.size()).isEqualTo(5);
+    }
+
+    @Test
+    void removeDropsDocument() {
+        index.remove(3);
+        assertThat(index.search("火锅")).containsExactly(4L, 1L, 2L);
+        assertThat(index.size()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,180 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static com.hmdp.utils.RedisConstants.SNOWFLAKE_WORKER_KEY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SnowflakeIdWorkerTest {
+
+    private static final long NOW = 1700000000000L;
+
+    private final AtomicLong now = new AtomicLong(NOW);
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private SnowflakeIdWorker worker;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(ops);
+        // workerId 0 和 1 已被占用
+        when(ops.setIfAbsent(anyString(), anyString(), anyLong(), eq(TimeUnit.SECONDS))).thenReturn(true);
+        when(ops.setIfAbsent(eq(SNOWFLAKE_WORKER_KEY + 0), anyString(), anyLong(), eq(TimeUnit.SECONDS))).thenReturn(false);
+        when(ops.setIfAbsent(eq(SNOWFLAKE_WORKER_KEY + 1), anyString(), anyLong(), eq(TimeUnit.SECONDS))).thenReturn(false);
+        worker = start(now::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(worker, "destroy");
+    }
+
+    private SnowflakeIdWorker start(LongSupplier clock) {
+        SnowflakeIdWorker w = new SnowflakeIdWorker(stringRedisTemplate, clock);
+        ReflectionTestUtils.setField(w, "maxBackwardMs", 10L);
+        ReflectionTestUtils.invokeMethod(w, "init");
+        return w;
+    }
+
+    private static long timestamp(long id) {
+        return id >>> 22;
+    }
+
+    private static long clockBack(long id) {
+        return (id >>> 21) & 1;
+    }
+
+    private static long workerId(long id) {
+        return (id >>> 12) & 511;
+    }
+
+    private static long sequence(long id) {
+        return id & 4095;
+    }
+
+    @Test
+    void idLayoutCarriesTimestampWorkerAndSequence() {
+        long first = worker.nextId();
+        long second = worker.nextId();
+        assertThat(worker.getWorkerId()).isEqualTo(2L);
+        assertThat(workerId(first)).isEqualTo(2L);
+        assertThat(timestamp(first)).isEqualTo(NOW - 1640995200000L);
+        assertThat(clockBack(first)).isZero();
+        assertThat(sequence(second)).isEqualTo(sequence(first) + 1);
+        assertThat(second).isGreaterThan(first);
+    }
+
+    @Test
+    void newMillisecondResetsSequence() {
+        worker.nextId();
+        worker.nextId();
+        now.incrementAndGet();
+        long id = worker.nextId();
+        assertThat(sequence(id)).isZero();
+        assertThat(timestamp(id)).isEqualTo(NOW + 1 - 1640995200000L);
+    }
+
+    @Test
+    void smallBackwardKeepsLastTimestamp() {
+        now.addAndGet(5);
+        long before = worker.nextId();
+        now.addAndGet(-10);
+        long after = worker.nextId();
+        assertThat(timestamp(after)).isEqualTo(timestamp(before));
+        assertThat(clockBack(after)).isEqualTo(clockBack(before));
+        assertThat(after).isGreaterThan(before);
+        assertThat(worker.getClockBackwardCount()).isZero();
+    }
+
+    @Test
+    void largeBackwardFlipsClockBackBit() {
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            ids.add(worker.nextId());
+            now.incrementAndGet();
+        }
+        // 回拨 1 秒，新时间戳和回拨前的ID重叠，靠回拨位区分
+        now.addAndGet(-1000);
+        long flipped = worker.nextId();
+        assertThat(clockBack(flipped)).isEqualTo(1L);
+        assertThat(timestamp(flipped)).isEqualTo(now.get() - 1640995200000L);
+        assertThat(worker.getClockBackwardCount()).isEqualTo(1L);
+        for (int i = 0; i < 100; i++) {
+            long id = worker.nextId();
+            assertThat(clockBack(id)).isEqualTo(1L);
+            assertThat(ids.add(id)).isTrue();
+            now.incrementAndGet();
+        }
+        assertThat(ids.add(flipped)).isTrue();
+    }
+
+    @Test
+    void secondLargeBackwardIntoFirstWindowIsRefused() {
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            ids.add(worker.nextId());
+            now.incrementAndGet();
+        }
+        now.addAndGet(-1000);
+        assertThat(clockBack(worker.nextId())).isEqualTo(1L);
+        // 再回拨到第一次回拨前已经发过号的时间段，回拨位翻回0会和那时的ID重复
+        now.addAndGet(-500);
+        assertThatThrownBy(worker::nextId).isInstanceOf(IllegalStateException.class);
+        assertThat(worker.getClockBackwardCount()).isEqualTo(1L);
+        // 时钟越过第一次回拨前的时间段后恢复发号
+        now.set(NOW + 100);
+        long id = worker.nextId();
+        assertThat(ids).doesNotContain(id);
+    }
+
+    @Test
+    void secondLargeBackwardPastFirstWindowFlipsBitBack() {
+        worker.nextId();
+        // 回拨 1 秒后时钟继续走了 2 秒，再回拨到第一次回拨前最后发号时间之后 1ms
+        now.addAndGet(-1000);
+        assertThat(clockBack(worker.nextId())).isEqualTo(1L);
+        now.addAndGet(2000);
+        worker.nextId();
+        now.addAndGet(-999);
+        long id = worker.nextId();
+        assertThat(clockBack(id)).isZero();
+        assertThat(timestamp(id)).isEqualTo(NOW + 1 - 1640995200000L);
+        assertThat(worker.getClockBackwardCount()).isEqualTo(2L);
+    }
+
+    @Test
+    void exhaustedSequenceWaitsForNextMillisecond() {
+        ReflectionTestUtils.invokeMethod(worker, "destroy");
+        // 前 5000 次读时钟都在同一毫秒，之后进入下一毫秒
+        AtomicInteger reads = new AtomicInteger();
+        worker = start(() -> reads.incrementAndGet() <= 5000 ? NOW : NOW + 1);
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 4100; i++) {
+            assertThat(ids.add(worker.nextId())).isTrue();
+        }
+        assertThat(worker.getSequenceExhaustedCount()).isPositive();
+        assertThat(worker.getGeneratedCount()).isEqualTo(4100L);
+    }
+}
@@ -0,0 +1,78 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StockShardManagerTest {
+
+    @Test
+    void homeShardIsStableAndInRange() {
+        assertThat(StockShardManager.homeShard(7L, 4)).isEqualTo(3);
+        assertThat(StockShardManager.homeShard(8L, 4)).isZero();
+        assertThat(StockShardManager.homeShard(-1L, 4)).isEqualTo(3);
+    }
+
+    @Test
+    void siblingsCoverEveryOtherShardOnceForEveryOffset() {
+        for (int shards = 2; shards <= 8; shards++) {
+            for (int home = 0; home < shards; home++) {
+                for (int offset = 0; offset < shards - 1; offset++) {
+                    int[] siblings = StockShardManager.siblings(home, shards, offset);
+                    assertThat(siblings).hasSize(shards - 1).doesNotContain(home).doesNotHaveDuplicates();
+                    for (int sibling : siblings) {
+                        assertThat(sibling).isBetween(0, shards - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void siblingsStartAtOffset() {
+        assertThat(StockShardManager.siblings(1, 4, 0)).containsExactly(2, 3, 0);
+        assertThat(StockShardManager.siblings(1, 4, 2)).containsExactly(0, 2, 3);
+    }
+
+    @Test
+    void shardKeysOfOneShardShareHashTag() {
+        assertThat(StockShardManager.stockKey(10L, 2)).endsWith("{10:2}");
+        assertThat(StockShardManager.orderKey(10L, 2)).endsWith("{10:2}");
+        assertThat(StockShardManager.pendingKey(10L, 2)).endsWith("{10:2}");
+    }
+
+    @Test
+    void balancedOrEmptyShardsNeedNoTransfers() {
+        assertThat(StockShardManager.planTransfers(new long[]{0, 0, 0})).isEmpty();
+        assertThat(StockShardManager.planTransfers(new long[]{3, 2, 3})).isEmpty();
+    }
+
+    @Test
+    void transfersBalanceShardsAndConserveStock() {
+        long[][] cases = {
+                {10, 0, 0, 0},
+                {0, 0, 7},
+                {5, 0, 9, 1, 0},
+                {1, 0, 0, 0, 0, 0},
+                {100, 1, 50, 0}
+        };
+        for (long[] stocks : cases) {
+            long[] after = stocks.clone();
+            List<long[]> transfers = StockShardManager.planTransfers(stocks);
+            for (long[] transfer : transfers) {
+                assertThat(transfer[2]).isPositive();
+                // 源分片不能转出比自己多的库存
+                assertThat(after[(int) transfer[0]]).isGreaterThanOrEqualTo(transfer[2]);
+                after[(int) transfer[0]] -= transfer[2];
+                after[(int) transfer[1]] += transfer[2];
+            }
+            assertThat(Arrays.stream(after).sum()).isEqualTo(Arrays.stream(stocks).sum());
+            long max = Arrays.stream(after).max().getAsLong();
+            long min = Arrays.stream(after).min().getAsLong();
+            assertThat(max - min).isLessThanOrEqualTo(1);
+        }
+    }
+}
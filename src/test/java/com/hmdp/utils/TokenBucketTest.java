@@ -0,0 +1,65 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong now = new AtomicLong(SECOND);
+
+    @Test
+    void newBucketAllowsBurstUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(1, 3, now::get);
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void refillsAtRate() {
+        TokenBucket bucket = new TokenBucket(2, 2, now::get);
+        drain(bucket);
+        // 0.4秒只补 0.8 个令牌
+        now.addAndGet(SECOND * 4 / 10);
+        assertThat(bucket.tryAcquire()).isFalse();
+        // 再过 0.1秒凑满 1 个
+        now.addAndGet(SECOND / 10);
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void refillIsCappedAtCapacity() {
+        TokenBucket bucket = new TokenBucket(100, 5, now::get);
+        drain(bucket);
+        now.addAndGet(SECOND * 60);
+        assertThat(drain(bucket)).isEqualTo(5);
+    }
+
+    @Test
+    void rejectedCallsDoNotLoseAccruedTokens() {
+        TokenBucket bucket = new TokenBucket(1, 1, now::get);
+        drain(bucket);
+        for (int i = 0; i < 4; i++) {
+            now.addAndGet(SECOND / 4);
+            if (i < 3) {
+                assertThat(bucket.tryAcquire()).isFalse();
+            }
+        }
+        assertThat(bucket.tryAcquire()).isTrue();
+    }
+
+    private static int drain(TokenBucket bucket) {
+        int acquired = 0;
+        while (bucket.tryAcquire()) {
+            acquired++;
+        }
+        return acquired;
+    }
+}
@@ -0,0 +1,116 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HyperLogLogOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.Temporal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UvCounterTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 15);
+
+    private StringRedisTemplate stringRedisTemplate;
+    private HyperLogLogOperations<String, String> hll;
+    private UvCounter uvCounter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        hll = mock(HyperLogLogOperations.class);
+        when(stringRedisTemplate.opsForHyperLogLog()).thenReturn(hll);
+        uvCounter = new UvCounter(stringRedisTemplate);
+        ReflectionTestUtils.setField(uvCounter, "retention", Duration.ofDays(90));
+    }
+
+    @Test
+    void finishedMonthsAreRolledUpAndCurrentMonthUsesDays() {
+        List<Temporal> segments = UvCounter.segments(
+                LocalDate.of(2024, 1, 1), TODAY, TODAY, 90);
+        assertThat(segments).hasSize(2 + 15);
+        assertThat(segments.subList(0, 2)).containsExactly(YearMonth.of(2024, 1), YearMonth.of(2024, 2));
+        assertThat(segments.get(2)).isEqualTo(LocalDate.of(2024, 3, 1));
+        assertThat(segments.get(16)).isEqualTo(TODAY);
+    }
+
+    @Test
+    void partialMonthsUseDays() {
+        List<Temporal> segments = UvCounter.segments(
+                LocalDate.of(2024, 1, 10), LocalDate.of(2024, 2, 5), TODAY, 90);
+        assertThat(segments).hasSize(22 + 5).allMatch(s -> s instanceof LocalDate);
+    }
+
+    @Test
+    void currentMonthIsNeverRolledUpEvenWhenCoveredCompletely() {
+        LocalDate endOfMonth = LocalDate.of(2024, 3, 31);
+        List<Temporal> segments = UvCounter.segments(LocalDate.of(2024, 3, 1), endOfMonth, endOfMonth, 90);
+        assertThat(segments).hasSize(31).allMatch(s -> s instanceof LocalDate);
+    }
+
+    @Test
+    void rangeIsClampedToRetentionAndToday() {
+        List<Temporal> segments = UvCounter.segments(
+                LocalDate.of(2000, 1, 1), LocalDate.of(2100, 1, 1), TODAY, 90);
+        // 2023-12-16 ~ 2023-12-31 按天，1、2月整月，3月按天到今天
+        assertThat(segments.get(0)).isEqualTo(TODAY.minusDays(90));
+        assertThat(segments).hasSize(16 + 2 + 15);
+        assertThat(segments.get(segments.size() - 1)).isEqualTo(TODAY);
+    }
+
+    @Test
+    void futureRangeHasNoKeys() {
+        assertThat(UvCounter.segments(TODAY.plusDays(1), TODAY.plusYears(1000), TODAY, 90)).isEmpty();
+    }
+
+    @Test
+    void countRejectsInvertedRange() {
+        LocalDate today = LocalDate.now();
+        assertThatThrownBy(() -> uvCounter.count(UvCounter.TYPE_SHOP, 1L, today, today.minusDays(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void countMergesMissingMonthlyHllOnce() {
+        YearMonth lastMonth = YearMonth.now().minusMonths(1);
+        String monthKey = "uv:shop:1:" + lastMonth.format(DateTimeFormatter.ofPattern("yyyyMM"));
+        when(stringRedisTemplate.hasKey(monthKey)).thenReturn(false);
+        when(hll.size(any(String[].class))).thenReturn(42L);
+
+        long count = uvCounter.count(UvCounter.TYPE_SHOP, 1L, lastMonth.atDay(1), LocalDate.now());
+
+        assertThat(count).isEqualTo(42L);
+        verify(hll).union(eq(monthKey), any(String[].class));
+        verify(stringRedisTemplate).expire(monthKey, Duration.ofDays(90));
+    }
+
+    @Test
+    void countReusesExistingMonthlyHll() {
+        YearMonth lastMonth = YearMonth.now().minusMonths(1);
+        String monthKey = "uv:blog:7:" + lastMonth.format(DateTimeFormatter.ofPattern("yyyyMM"));
+        when(stringRedisTemplate.hasKey(monthKey)).thenReturn(true);
+        when(hll.size(any(String[].class))).thenReturn(3L);
+
+        assertThat(uvCounter.count(UvCounter.TYPE_BLOG, 7L, lastMonth.atDay(1), lastMonth.atEndOfMonth()))
+                .isEqualTo(3L);
+        verify(hll, never()).union(anyString(), any(String[].class));
+        verify(hll).size(new String[]{monthKey});
+    }
+}